@@ -21,6 +21,9 @@ android {
         targetSdk = 36
         versionCode = 36
         versionName = "1.0.36"
+
+        // capture path trace markers, build with -PtraceCapture=true to have them always on
+        buildConfigField("boolean", "TRACE_CAPTURE", (project.findProperty("traceCapture") ?: "false").toString())
     }
     buildTypes {
         getByName("release") {
@@ -55,6 +58,8 @@ kotlin {
 dependencies {
     coreLibraryDesugaring("com.android.tools:desugar_jdk_libs:2.1.5")
 
+    implementation(project(":scanner-core"))
+
     implementation("androidx.core:core-ktx:1.16.0")
     implementation("org.jetbrains.kotlin:kotlin-stdlib-jdk8:2.1.20")
 
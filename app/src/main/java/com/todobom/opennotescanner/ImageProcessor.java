@@ -1,49 +1,46 @@
 package com.todobom.opennotescanner;
 
 import android.content.SharedPreferences;
-import android.graphics.Bitmap;
-import android.graphics.Color;
-import android.graphics.Paint;
-import android.graphics.Path;
-import android.graphics.drawable.shapes.PathShape;
+import android.os.Build;
 import android.os.Handler;
 import android.os.Looper;
 import android.os.Message;
 import android.preference.PreferenceManager;
 import android.util.Log;
 
-import com.google.zxing.BinaryBitmap;
-import com.google.zxing.ChecksumException;
-import com.google.zxing.FormatException;
-import com.google.zxing.LuminanceSource;
-import com.google.zxing.NotFoundException;
-import com.google.zxing.RGBLuminanceSource;
 import com.google.zxing.Result;
-import com.google.zxing.common.HybridBinarizer;
-import com.google.zxing.multi.qrcode.QRCodeMultiReader;
-import com.todobom.opennotescanner.helpers.OpenNoteMessage;
+import com.todobom.opennotescanner.helpers.CaptureTrace;
+import com.todobom.opennotescanner.helpers.HudMask;
 import com.todobom.opennotescanner.helpers.PreviewFrame;
-import com.todobom.opennotescanner.helpers.Quadrilateral;
 import com.todobom.opennotescanner.helpers.ScannedDocument;
 import com.todobom.opennotescanner.helpers.Utils;
+import com.todobom.opennotescanner.processing.DetectionCalibration;
+import com.todobom.opennotescanner.processing.DetectionGeometry;
+import com.todobom.opennotescanner.processing.DocumentDetector;
+import com.todobom.opennotescanner.processing.DocumentEnhancer;
+import com.todobom.opennotescanner.processing.DocumentWarper;
+import com.todobom.opennotescanner.processing.FrameMailbox;
+import com.todobom.opennotescanner.processing.MatTracker;
+import com.todobom.opennotescanner.processing.PipelineMetrics;
+import com.todobom.opennotescanner.processing.PipelineMetrics.Stage;
+import com.todobom.opennotescanner.processing.PreviewAnalyzer;
+import com.todobom.opennotescanner.processing.Quadrilateral;
 import com.todobom.opennotescanner.views.HUDCanvasView;
 
 import org.opencv.core.Core;
-import org.opencv.core.CvType;
 import org.opencv.core.Mat;
 import org.opencv.core.MatOfPoint;
-import org.opencv.core.MatOfPoint2f;
 import org.opencv.core.Point;
-import org.opencv.core.Scalar;
 import org.opencv.core.Size;
 import org.opencv.imgproc.Imgproc;
 
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import androidx.annotation.NonNull;
 
@@ -53,24 +50,61 @@ import androidx.annotation.NonNull;
 public class ImageProcessor extends Handler {
 
     private static final String TAG = "ImageProcessor";
+
+    // prefix of the preference keys holding calibrated detection heights
+    private static final String DETECTION_HEIGHT_KEY = "detection_height_";
+
+    private static final int MSG_PREVIEW_FRAME = 1;
+    private static final int MSG_PICTURE_TAKEN = 2;
+
     private final OpenNoteScannerActivity mMainActivity;
-    private boolean mBugRotate;
-    private boolean colorMode=false;
-    private boolean filterMode=true;
-    private static final double colorGain = 1.5;       // contrast
-    private static final double colorBias = 0;         // bright
-    private static final int colorThresh = 110;        // threshold
+    private final FrameMailbox<PreviewFrame> mPreviewMailbox = new FrameMailbox<>();
+    private final AtomicBoolean mPictureInProgress = new AtomicBoolean(false);
+    private volatile boolean mCancelPreview = false;
+    private volatile boolean mBugRotate;
     private Size mPreviewSize;
     private Point[] mPreviewPoints;
 
     private double mDocumentAspectRatio;
+    private volatile DetectionGeometry mPictureGeometry;
+    private DetectionGeometry mHudGeometry;
+
+    // previews and pictures are both detected on the handler thread, one after the other
+    private final DocumentDetector mDetector = new DocumentDetector();
+    private final DocumentEnhancer mEnhancer = new DocumentEnhancer();
+
+    private final PipelineMetrics mMetrics = PipelineMetrics.getInstance();
+    private final MatTracker mMats = MatTracker.getInstance();
+
+    private final SharedPreferences mSharedPref;
+    // height frames are downscaled to for detection, picked per device and camera by the calibration
+    private final boolean mAutoDetectionHeight;
+
+    // QR decoding of a preview frame runs on its own thread while the handler detects the document
+    private final ExecutorService mAnalysisExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        private final AtomicInteger mCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(@NonNull Runnable r) {
+            Thread thread = new Thread(r, "Analysis Worker " + mCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+    private final PreviewAnalyzer mAnalyzer = new PreviewAnalyzer(mDetector, mAnalysisExecutor);
 
     public ImageProcessor(Looper looper, OpenNoteScannerActivity mainActivity) {
         super(looper);
         mMainActivity = mainActivity;
 
         SharedPreferences sharedPref = PreferenceManager.getDefaultSharedPreferences(mainActivity);
+        mSharedPref = sharedPref;
+        mAutoDetectionHeight = sharedPref.getBoolean("auto_detection_height", true);
         mBugRotate = sharedPref.getBoolean("bug_rotate",false);
+        mAnalyzer.setBugRotate(mBugRotate);
+        mAnalyzer.setQuadTracking(sharedPref.getBoolean("quad_tracking", true));
+        mEnhancer.setBinarization(sharedPref.getBoolean("background_binarization", false)
+                ? DocumentEnhancer.Binarization.BACKGROUND : DocumentEnhancer.Binarization.ADAPTIVE_MEAN);
 
         String docPageFormat = sharedPref.getString("document_page_format", "0");
         mDocumentAspectRatio = 0;
@@ -83,103 +117,223 @@ public class ImageProcessor extends Handler {
         } else {
             mDocumentAspectRatio = Float.parseFloat(docPageFormat);
         }
+        mAnalyzer.setDocumentAspectRatio(mDocumentAspectRatio);
     }
 
-    public void handleMessage ( Message msg ) {
+    /**
+     * Posts a preview frame for analysis. Only the latest frame is kept, a frame
+     * still waiting in the mailbox is released and accounted as dropped.
+     *
+     * @return false if the frame was not accepted because a picture is being processed,
+     * the caller keeps ownership of the frame in that case
+     */
+    public boolean postPreviewFrame(PreviewFrame previewFrame) {
+        if (mPictureInProgress.get()) {
+            return false;
+        }
 
-        if (msg.obj.getClass() == OpenNoteMessage.class) {
+        PreviewFrame stale = mPreviewMailbox.post(previewFrame);
+        if (stale != null) {
+            // a drain message is already queued for the mailbox
+            stale.release();
+        } else {
+            sendEmptyMessage(MSG_PREVIEW_FRAME);
+        }
+        return true;
+    }
 
-            OpenNoteMessage obj = (OpenNoteMessage) msg.obj;
+    /**
+     * Posts a taken picture for processing, ahead of any queued preview work.
+     * The preview frame being analyzed is cancelled and the waiting one discarded.
+     *
+     * @param captureId trace id of the capture, see {@link CaptureTrace}
+     */
+    public void postPicture(Mat picture, int captureId) {
+        mPictureInProgress.set(true);
+        mCancelPreview = true;
 
-            String command = obj.getCommand();
+        // the picture does not wait for a QR decode nobody will look at
+        mAnalyzer.cancel();
 
-            Log.v(TAG, "Message Received: " + command + " - " + obj.getObj().toString() );
+        PreviewFrame stale = mPreviewMailbox.clear();
+        if (stale != null) {
+            stale.release();
+        }
 
-            if ( command.equals("previewFrame")) {
-                processPreviewFrame((PreviewFrame) obj.getObj());
-            } else if ( command.equals("pictureTaken")) {
-                processPicture((Mat) obj.getObj());
-            } else if ( command.equals("colorMode")) {
-                colorMode=(Boolean) obj.getObj();
-            } else if ( command.equals("filterMode")) {
-                filterMode=(Boolean) obj.getObj();
-            }
+        CaptureTrace.beginAsync(CaptureTrace.PROCESSING_QUEUE, captureId);
+        sendMessageAtFrontOfQueue(obtainMessage(MSG_PICTURE_TAKEN, captureId, 0, picture));
+    }
+
+    public void setColorMode(boolean colorMode) {
+        mEnhancer.setColorMode(colorMode);
+    }
+
+    public void setFilterMode(boolean filterMode) {
+        mEnhancer.setFilterMode(filterMode);
+    }
+
+    /**
+     * false when the enhancement only keeps the gray levels, the picture can then be decoded as gray
+     */
+    public boolean isColorNeeded() {
+        return mEnhancer.isColorNeeded();
+    }
+
+    public long getDroppedPreviewFrames() {
+        return mPreviewMailbox.getDroppedCount();
+    }
+
+    @Override
+    public void handleMessage ( Message msg ) {
+        switch (msg.what) {
+            case MSG_PREVIEW_FRAME:
+                PreviewFrame previewFrame = mPreviewMailbox.take();
+                if (previewFrame != null) {
+                    mCancelPreview = false;
+                    processPreviewFrame(previewFrame);
+                }
+                break;
+            case MSG_PICTURE_TAKEN:
+                CaptureTrace.endAsync(CaptureTrace.PROCESSING_QUEUE, msg.arg1);
+                boolean section = CaptureTrace.beginSection("processPicture");
+                try {
+                    processPicture((Mat) msg.obj, msg.arg1);
+                } finally {
+                    CaptureTrace.endSection(section);
+                }
+                break;
         }
     }
 
     private void processPreviewFrame( PreviewFrame previewFrame ) {
 
-        Result[] results = {};
+        if (mAnalysisExecutor.isShutdown() || mCancelPreview) {
+            previewFrame.release();
+            return;
+        }
 
-        Mat frame = previewFrame.getFrame();
+        long frameStart = mMetrics.start();
+        boolean autoMode = previewFrame.isAutoMode();
+        boolean previewOnly = previewFrame.isPreviewOnly();
 
+        // QR codes are only used to trigger the capture in auto mode, their crop is copied
+        // so the frame goes back to the camera right after the analysis
+        PreviewAnalyzer.Analysis analysis;
         try {
-            results = zxing(frame);
-        } catch (ChecksumException | FormatException e) {
-            // TODO Auto-generated catch block
-            e.printStackTrace();
+            analysis = mAnalyzer.analyze(previewFrame.getFrame(), previewFrame.getData(), autoMode);
+        } catch (RuntimeException e) {
+            Log.e(TAG, "preview analysis failed", e);
+            previewFrame.release();
+            return;
+        }
+        previewFrame.release();
+
+        if (mCancelPreview) {
+            return;
         }
 
+        boolean documentDetected = drawPreviewDocument(analysis);
+
         boolean qrOk = false;
         String currentQR = null;
 
-        for (Result result: results) {
-            String qrText = result.getText();
-            if ( Utils.isMatch(qrText, "^P.. V.. S[0-9]+") && checkQR(qrText)) {
-                Log.d(TAG, "QR Code valid: " + result.getText());
-                qrOk = true;
-                currentQR = qrText;
-                break;
-            } else {
-                Log.d(TAG, "QR Code ignored: " + result.getText());
+        if (autoMode) {
+            for (Result result: analysis.getQRCodes()) {
+                String qrText = result.getText();
+                if ( Utils.isMatch(qrText, "^P.. V.. S[0-9]+") && checkQR(qrText)) {
+                    Log.d(TAG, "QR Code valid: " + result.getText());
+                    qrOk = true;
+                    currentQR = qrText;
+                    break;
+                } else if (Log.isLoggable(TAG, Log.VERBOSE)) {
+                    // repeats on every decoded frame, skip building the message unless asked for
+                    Log.v(TAG, "QR Code ignored: " + result.getText());
+                }
             }
         }
 
-        boolean autoMode = previewFrame.isAutoMode();
-        boolean previewOnly = previewFrame.isPreviewOnly();
-
         // request picture if document is detected and either scan button is clicked and not in auto mode or qr code is detected in auto mode
         // FIXME: consider simplifying this. isPreviewOnly contains isAutoMode, e.g if autoMode is true, isPreviewOnly will always be false
-        if ( detectPreviewDocument(frame) && ( (!autoMode && !previewOnly ) || ( autoMode && qrOk ) ) ) {
+        if ( documentDetected && ( (!autoMode && !previewOnly ) || ( autoMode && qrOk ) ) && !mCancelPreview ) {
             mMainActivity.waitSpinnerVisible();
             mMainActivity.requestPicture();
 
             if (qrOk) {
                 pageHistory.put(currentQR, new Date().getTime() / 1000);
+                mAnalyzer.reset();
                 Log.d(TAG, "QR Code scanned: " + currentQR);
             }
         }
 
-        frame.release();
-        mMainActivity.setImageProcessorBusy(false);
+        mMetrics.stop(Stage.PREVIEW_FRAME, frameStart);
+    }
+
+    /**
+     * Stops the analysis thread, a QR decode in flight is cancelled. The native
+     * memory of the detection and enhancement is freed on the handler thread once
+     * the work already queued is done.
+     */
+    public void shutdown() {
+        mAnalyzer.cancel();
+        mAnalysisExecutor.shutdown();
+        post(() -> {
+            mAnalyzer.release();
+            mDetector.release();
+            mEnhancer.release();
+        });
     }
 
-    public void processPicture( Mat picture ) {
+    public void processPicture( Mat picture, int captureId ) {
         Log.d(TAG, "processPicture - imported image " + picture.size().width + "x" + picture.size().height);
 
+        // the preview restarts after the picture, the tracked document is gone by then
+        mAnalyzer.reset();
+
         if (mBugRotate) {
             Core.flip(picture, picture, 1 );
             Core.flip(picture, picture, 0 );
         }
 
-        ScannedDocument doc = detectDocument(picture);
+        boolean section = CaptureTrace.beginSection("detectDocument");
+        ScannedDocument doc;
+        try {
+            doc = detectDocument(picture);
+        } finally {
+            CaptureTrace.endSection(section);
+        }
+        doc.setCaptureId(captureId);
         mMainActivity.saveDocument(doc);
 
+        // releases the picture along with the processed document
         doc.release();
-        picture.release();
 
-        mMainActivity.setImageProcessorBusy(false);
+        if (mMats.isEnabled()) {
+            Log.d(TAG, "processPicture - " + mMats.endCapture());
+        }
+
+        Log.d(TAG, "processPicture - preview frames posted: " + mPreviewMailbox.getPostedCount()
+                + " dropped: " + mPreviewMailbox.getDroppedCount()
+                + " workspace allocations: " + getWorkspaceAllocations());
+
+        mPictureInProgress.set(false);
         mMainActivity.setAttemptToFocus(false);
         mMainActivity.waitSpinnerInvisible();
     }
 
 
     private ScannedDocument detectDocument(Mat inputRgba) {
-        ArrayList<MatOfPoint> contours = findContours(inputRgba);
+        if (inputRgba.channels() == 1 && mEnhancer.isColorNeeded()) {
+            // decoded as gray for B/W, the colour mode was turned on in between
+            Imgproc.cvtColor(inputRgba, inputRgba, Imgproc.COLOR_GRAY2RGB);
+        }
 
-        ScannedDocument sd = new ScannedDocument(inputRgba);
+        DetectionGeometry geometry = getPictureGeometry(inputRgba.size());
 
-        Quadrilateral quad = getQuadrilateral(contours, inputRgba.size());
+        long start = mMetrics.start();
+        Quadrilateral quad = mDetector.detect(inputRgba, geometry);
+        mMetrics.stop(Stage.CAPTURE_DETECT, start);
+
+        ScannedDocument sd = new ScannedDocument(inputRgba);
 
         Mat doc;
 
@@ -191,14 +345,20 @@ public class ImageProcessor extends Handler {
             sd.setPreviewPoints(mPreviewPoints);
             sd.setPreviewSize(mPreviewSize);
 
-            doc = fourPointTransform(inputRgba, quad.getPoints());
+            start = mMetrics.start();
+            doc = DocumentWarper.fourPointTransform(inputRgba, quad.getPoints(), geometry.getRatio());
+            mMetrics.stop(Stage.CAPTURE_WARP, start);
 
         } else {
-            doc = new Mat( inputRgba.size() , CvType.CV_8UC4 );
+            doc = mMats.track(new Mat( inputRgba.size() , inputRgba.type() ), "detectDocument.copy");
             inputRgba.copyTo(doc);
         }
 
-        enhanceDocument(doc);
+        start = mMetrics.start();
+        boolean section = CaptureTrace.beginSection("enhanceDocument");
+        mEnhancer.enhance(doc);
+        CaptureTrace.endSection(section);
+        mMetrics.stop(Stage.CAPTURE_ENHANCE, start);
 
         sd.setProcessed(doc);
 
@@ -215,21 +375,25 @@ public class ImageProcessor extends Handler {
 
     }
 
-    private boolean detectPreviewDocument(Mat inputRgba) {
-
-        ArrayList<MatOfPoint> contours = findContours(inputRgba);
+    /**
+     * Shows the document area and the document found on the preview, if any
+     *
+     * @return true when a document was found
+     */
+    private boolean drawPreviewDocument(PreviewAnalyzer.Analysis analysis) {
 
-        Quadrilateral quad = getQuadrilateral(contours, inputRgba.size());
+        DetectionGeometry geometry = analysis.getGeometry();
+        Quadrilateral quad = analysis.getQuad();
 
         mPreviewPoints = null;
-        mPreviewSize = inputRgba.size();
-        drawDocumentArea(mPreviewSize);
+        mPreviewSize = new Size(geometry.getFrameWidth(), geometry.getFrameHeight());
+        drawDocumentArea(geometry);
 
         if (quad != null) {
 
             Point[] rescaledPoints = new Point[4];
 
-            double ratio = inputRgba.size().height / 500;
+            double ratio = geometry.getRatio();
 
             for ( int i=0; i<4 ; i++ ) {
                 int x = Double.valueOf(quad.getPoints()[i].x*ratio).intValue();
@@ -251,17 +415,25 @@ public class ImageProcessor extends Handler {
 
         }
 
-        mMainActivity.getHUD().clear();
-        mMainActivity.invalidateHUD();
+        if (mMainActivity.getHUD().clear()) {
+            mMainActivity.invalidateHUD();
+        }
 
         return false;
 
     }
 
-    private void drawDocumentArea(Size stdSize) {
+    private void drawDocumentArea(DetectionGeometry geometry) {
+        // the mask only depends on the geometry, it is set again only when that changes
+        if (geometry == mHudGeometry) {
+            return;
+        }
+        mHudGeometry = geometry;
+
         HUDCanvasView hud = mMainActivity.getHUD();
+        HudMask mask = new HudMask(geometry);
 
-        if (mDocumentAspectRatio == 0) {
+        if (mask.getShape() == null) {
             hud.setDocumentBoxShape(null, null, null);
             return;
         }
@@ -288,321 +460,140 @@ public class ImageProcessor extends Handler {
 
         /*   */
 
-        // ATTENTION: axis are swapped
-        float previewWidth = (float) stdSize.height;
-        float previewHeight = (float) stdSize.width;
-
-        Path path = new Path();
-
-        path.moveTo( 0 ,0 );
-        path.lineTo( previewWidth , 0 );
-        path.lineTo( previewWidth, previewHeight  );
-        path.lineTo( 0, previewHeight );
-        path.close();
-
-        float previewAspectRatio = previewHeight/previewWidth;
-
-        int[] documentArea = Utils.getDocumentArea((int) previewHeight, (int) previewWidth, mMainActivity);
-
-        path.moveTo( documentArea[1] , documentArea[0] );
-        path.lineTo( documentArea[1] , documentArea[2] );
-        path.lineTo( documentArea[3] , documentArea[2] );
-        path.lineTo( documentArea[3] , documentArea[0] );
-        path.close();
-
-        path.setFillType(Path.FillType.EVEN_ODD);
-
-        PathShape newBox = new PathShape(path , previewWidth , previewHeight);
-
-        Paint paint = new Paint();
-        paint.setColor(Color.argb(64, 255, 255, 255));
-
-        Paint border = new Paint();
-        border.setColor(Color.argb( 32, 255, 255, 255));
-        border.setStrokeWidth(5);
-
-        hud.setDocumentBoxShape(newBox, paint, border);
+        hud.setDocumentBoxShape(mask.getShape(), mask.getPaint(), mask.getBorder());
         mMainActivity.invalidateHUD();
     }
 
     private void drawDocumentBox(Point[] points, Size stdSize) {
 
-        Path path = new Path();
-
         HUDCanvasView hud = mMainActivity.getHUD();
 
-        // ATTENTION: axis are swapped
-        float previewWidth = (float) stdSize.height;
-        float previewHeight = (float) stdSize.width;
-
-        path.moveTo( previewWidth - (float) points[0].y, (float) points[0].x );
-        path.lineTo( previewWidth - (float) points[1].y, (float) points[1].x );
-        path.lineTo( previewWidth - (float) points[2].y, (float) points[2].x );
-        path.lineTo( previewWidth - (float) points[3].y, (float) points[3].x );
-        path.close();
-
-        PathShape newBox = new PathShape(path , previewWidth , previewHeight);
-
-        Paint paint = new Paint();
-        paint.setColor(Color.argb(64, 0, 255, 0));
-
-        Paint border = new Paint();
-        border.setColor(Color.rgb(0, 255, 0));
-        border.setStrokeWidth(5);
-
-        hud.clear();
-        hud.setDetectedShape(newBox, paint, border);
-        mMainActivity.invalidateHUD();
+        // only redraw when the document moved noticeably
+        if (hud.setDetectedQuad(points, stdSize.width, stdSize.height)) {
+            mMainActivity.invalidateHUD();
+        }
     }
 
-    private Quadrilateral getQuadrilateral( ArrayList<MatOfPoint> contours , Size srcSize ) {
-
-        double ratio = srcSize.height / 500;
-        int height = Double.valueOf(srcSize.height / ratio).intValue();
-        int width = Double.valueOf(srcSize.width / ratio).intValue();
-        Size size = new Size(width,height);
-
-        for ( MatOfPoint c: contours ) {
-            MatOfPoint2f c2f = new MatOfPoint2f(c.toArray());
-            double peri = Imgproc.arcLength(c2f, true);
-            MatOfPoint2f approx = new MatOfPoint2f();
-            Imgproc.approxPolyDP(c2f, approx, 0.02 * peri, true);
-
-            Point[] points = approx.toArray();
+    /**
+     * Native (re)allocations done by the detection workspace of the calling thread
+     */
+    public long getWorkspaceAllocations() {
+        return mDetector.getWorkspaceAllocations();
+    }
 
-            // select biggest 4 angles polygon
-            if (points.length == 4) {
-                Point[] foundPoints = sortPoints(points);
+    /**
+     * Sets the camera the preview comes from, its detection height is loaded or
+     * calibrated again on the next frame
+     */
+    public void setCameraId(int cameraId) {
+        mAnalyzer.setDetectionHeightStore(mAutoDetectionHeight ? new PreferenceHeightStore(cameraId) : null);
+        mPictureGeometry = null;
+    }
 
-                if (insideHotArea(foundPoints, size)) {
-                    return new Quadrilateral( c , foundPoints );
-                }
+    /**
+     * Forgets every calibrated detection height, they are calibrated again on the next preview
+     */
+    public static void clearDetectionHeights(SharedPreferences sharedPref) {
+        SharedPreferences.Editor editor = sharedPref.edit();
+        for (String key : sharedPref.getAll().keySet()) {
+            if (key.startsWith(DETECTION_HEIGHT_KEY)) {
+                editor.remove(key);
             }
         }
-
-        return null;
+        editor.apply();
     }
 
-    private Point[] sortPoints( Point[] src ) {
-
-        ArrayList<Point> srcPoints = new ArrayList<>(Arrays.asList(src));
-
-        Point[] result = { null , null , null , null };
-
-        Comparator<Point> sumComparator = (lhs, rhs) -> Double.valueOf(lhs.y + lhs.x).compareTo(rhs.y + rhs.x);
-
-        Comparator<Point> diffComparator = (lhs, rhs) -> Double.valueOf(lhs.y - lhs.x).compareTo(rhs.y - rhs.x);
-
-        // top-left corner = minimal sum
-        result[0] = Collections.min(srcPoints, sumComparator);
-
-        // bottom-right corner = maximal sum
-        result[2] = Collections.max(srcPoints, sumComparator);
-
-        // top-right corner = minimal diference
-        result[1] = Collections.min(srcPoints, diffComparator);
-
-        // bottom-left corner = maximal diference
-        result[3] = Collections.max(srcPoints, diffComparator);
-
-        return result;
+    /**
+     * Detection height last calibrated for the camera, whatever the preview size, the
+     * default one when the setting is off or nothing was calibrated yet. The preview
+     * size is chosen for it, before the height of that size is known.
+     */
+    public static int getCalibratedDetectionHeight(SharedPreferences sharedPref, int cameraId) {
+        if (!sharedPref.getBoolean("auto_detection_height", true)) {
+            return DetectionGeometry.DEFAULT_DETECTION_HEIGHT;
+        }
+        int stored = loadDetectionHeight(sharedPref, cameraKey(cameraId));
+        return stored > 0 ? stored : DetectionGeometry.DEFAULT_DETECTION_HEIGHT;
     }
 
-    private boolean insideHotArea(Point[] rp, Size size) {
-
-        int[] hotArea = Utils.getHotArea((int) size.width, (int) size.height, this.mMainActivity);
-
-        return (
-                rp[0].x <= hotArea[0] && rp[0].y <= hotArea[1]
-                        && rp[1].x >= hotArea[2] && rp[1].y <= hotArea[1]
-                        && rp[2].x >= hotArea[2] && rp[2].y >= hotArea[3]
-                        && rp[3].x <= hotArea[0] && rp[3].y >= hotArea[3]
-        );
+    private static String cameraKey(int cameraId) {
+        return DETECTION_HEIGHT_KEY + Build.MODEL + "_" + cameraId;
     }
 
-    private void enhanceDocument( Mat src ) {
-        if (colorMode && filterMode) {
-            src.convertTo(src,-1, colorGain , colorBias);
-            Mat mask = new Mat(src.size(), CvType.CV_8UC1);
-            Imgproc.cvtColor(src,mask,Imgproc.COLOR_RGBA2GRAY);
-
-            Mat copy = new Mat(src.size(), CvType.CV_8UC3);
-            src.copyTo(copy);
-
-            Imgproc.adaptiveThreshold(mask,mask,255,Imgproc.ADAPTIVE_THRESH_MEAN_C,Imgproc.THRESH_BINARY_INV,225,15);
-
-            src.setTo(new Scalar(255,255,255));
-            copy.copyTo(src,mask);
-
-            copy.release();
-            mask.release();
-
-            // special color threshold algorithm
-            colorThresh(src,colorThresh);
-        } else if (!colorMode) {
-            Imgproc.cvtColor(src,src,Imgproc.COLOR_RGBA2GRAY);
-            if (filterMode) {
-                Imgproc.adaptiveThreshold(src, src, 255, Imgproc.ADAPTIVE_THRESH_MEAN_C, Imgproc.THRESH_BINARY, 225, 15);
-            }
-        }
+    /**
+     * @return the height stored under the key by the current calibration, 0 when there is none
+     */
+    private static int loadDetectionHeight(SharedPreferences sharedPref, String key) {
+        return DetectionCalibration.getStoredHeight(sharedPref.getInt(key, 0), sharedPref.getInt(key + "_version", 0));
     }
 
     /**
-     * When a pixel have any of its three elements above the threshold
-     * value and the average of the three values are less than 80% of the
-     * higher one, brings all three values to the max possible keeping
-     * the relation between them, any absolute white keeps the value, all
-     * others go to absolute black.
-     *
-     * src must be a 3 channel image with 8 bits per channel
-     *
-     * @param src
-     * @param threshold
+     * Keeps the calibrated detection heights in the preferences, per device, camera
+     * and preview size, along with the version of the calibration that picked them
      */
-    private void colorThresh(Mat src, int threshold) {
-        Size srcSize = src.size();
-        int size = (int) (srcSize.height * srcSize.width)*3;
-        byte[] d = new byte[size];
-        src.get(0,0,d);
+    private class PreferenceHeightStore implements PreviewAnalyzer.DetectionHeightStore {
+        private final int mCameraId;
 
-        for (int i=0; i < size; i+=3) {
-
-            // the "& 0xff" operations are needed to convert the signed byte to double
-
-            // avoid unneeded work
-            if ( (double) (d[i] & 0xff) == 255 ) {
-                continue;
-            }
+        PreferenceHeightStore(int cameraId) {
+            mCameraId = cameraId;
+        }
 
-            double max = Math.max(Math.max((double) (d[i] & 0xff), (double) (d[i + 1] & 0xff)),
-                    (double) (d[i + 2] & 0xff));
-            double mean = ((double) (d[i] & 0xff) + (double) (d[i + 1] & 0xff)
-                    + (double) (d[i + 2] & 0xff)) / 3;
+        private String key(int width, int height) {
+            return cameraKey(mCameraId) + "_" + width + "x" + height;
+        }
 
-            if (max > threshold && mean < max * 0.8) {
-                d[i] = (byte) ((double) (d[i] & 0xff) * 255 / max);
-                d[i + 1] = (byte) ((double) (d[i + 1] & 0xff) * 255 / max);
-                d[i + 2] = (byte) ((double) (d[i + 2] & 0xff) * 255 / max);
+        @Override
+        public int load(int width, int height) {
+            String key = key(width, height);
+            int stored = loadDetectionHeight(mSharedPref, key);
+            if (stored > 0) {
+                Log.d(TAG, "detection height " + stored + " for " + key);
             } else {
-                d[i] = d[i + 1] = d[i + 2] = 0;
+                Log.d(TAG, "calibrating the detection height for " + key);
             }
+            return stored;
         }
-        src.put(0,0,d);
-    }
-
-    @NonNull
-    private Mat fourPointTransform( Mat src , Point[] pts ) {
-
-        double ratio = src.size().height / 500;
-
-        Point tl = pts[0];
-        Point tr = pts[1];
-        Point br = pts[2];
-        Point bl = pts[3];
-
-        double widthA = Math.sqrt(Math.pow(br.x - bl.x, 2) + Math.pow(br.y - bl.y, 2));
-        double widthB = Math.sqrt(Math.pow(tr.x - tl.x, 2) + Math.pow(tr.y - tl.y, 2));
-
-        double dw = Math.max(widthA, widthB)*ratio;
-        int maxWidth = Double.valueOf(dw).intValue();
-
-
-        double heightA = Math.sqrt(Math.pow(tr.x - br.x, 2) + Math.pow(tr.y - br.y, 2));
-        double heightB = Math.sqrt(Math.pow(tl.x - bl.x, 2) + Math.pow(tl.y - bl.y, 2));
-
-        double dh = Math.max(heightA, heightB)*ratio;
-        int maxHeight = Double.valueOf(dh).intValue();
-
-        Mat doc = new Mat(maxHeight, maxWidth, CvType.CV_8UC4);
-
-        Mat src_mat = new Mat(4, 1, CvType.CV_32FC2);
-        Mat dst_mat = new Mat(4, 1, CvType.CV_32FC2);
-
-        src_mat.put(0, 0, tl.x*ratio, tl.y*ratio, tr.x*ratio, tr.y*ratio, br.x*ratio, br.y*ratio, bl.x*ratio, bl.y*ratio);
-        dst_mat.put(0, 0, 0.0, 0.0, dw, 0.0, dw, dh, 0.0, dh);
 
-        Mat m = Imgproc.getPerspectiveTransform(src_mat, dst_mat);
-
-        Imgproc.warpPerspective(src, doc, m, doc.size());
-
-        return doc;
+        @Override
+        public void store(int width, int height, int detectionHeight) {
+            String key = key(width, height);
+            Log.d(TAG, "calibrated detection height " + detectionHeight + " for " + key);
+            // the camera key holds the latest height, the preview size is chosen with it
+            String cameraKey = cameraKey(mCameraId);
+            mSharedPref.edit()
+                    .putInt(key, detectionHeight)
+                    .putInt(key + "_version", DetectionCalibration.VERSION)
+                    .putInt(cameraKey, detectionHeight)
+                    .putInt(cameraKey + "_version", DetectionCalibration.VERSION)
+                    .apply();
+        }
     }
 
-    private ArrayList<MatOfPoint> findContours(Mat src) {
-
-        Mat grayImage = null;
-        Mat cannedImage = null;
-        Mat resizedImage = null;
-
-        double ratio = src.size().height / 500;
-        int height = Double.valueOf(src.size().height / ratio).intValue();
-        int width = Double.valueOf(src.size().width / ratio).intValue();
-        Size size = new Size(width,height);
-
-        resizedImage = new Mat(size, CvType.CV_8UC4);
-        grayImage = new Mat(size, CvType.CV_8UC4);
-        cannedImage = new Mat(size, CvType.CV_8UC1);
-
-        Imgproc.resize(src,resizedImage,size);
-        Imgproc.cvtColor(resizedImage, grayImage, Imgproc.COLOR_RGBA2GRAY, 4);
-        Imgproc.GaussianBlur(grayImage, grayImage, new Size(5, 5), 0);
-        Imgproc.Canny(grayImage, cannedImage, 75, 200);
-
-        ArrayList<MatOfPoint> contours = new ArrayList<MatOfPoint>();
-        Mat hierarchy = new Mat();
-
-        Imgproc.findContours(cannedImage, contours, hierarchy, Imgproc.RETR_LIST, Imgproc.CHAIN_APPROX_SIMPLE);
-
-        hierarchy.release();
-
-        Collections.sort(contours, (lhs, rhs) -> Double.valueOf(Imgproc.contourArea(rhs)).compareTo(Imgproc.contourArea(lhs)));
-
-        resizedImage.release();
-        grayImage.release();
-        cannedImage.release();
-
-        return contours;
+    public void setBugRotate(boolean bugRotate) {
+        mBugRotate = bugRotate;
+        mAnalyzer.setBugRotate(bugRotate);
+        // the camera changed, the geometry will be rebuilt on the next frame
+        mPictureGeometry = null;
     }
 
-    private QRCodeMultiReader qrCodeMultiReader = new QRCodeMultiReader();
-
-
-
-    public Result[] zxing( Mat inputImage ) throws ChecksumException, FormatException {
-
-        int w = inputImage.width();
-        int h = inputImage.height();
-
-        Mat southEast;
-
-        if (mBugRotate) {
-            southEast = inputImage.submat(h-h/4 , h , 0 , w/2 - h/4 );
-        } else {
-            southEast = inputImage.submat(0, h / 4, w / 2 + h / 4, w);
-        }
-
-        Bitmap bMap = Bitmap.createBitmap(southEast.width(), southEast.height(), Bitmap.Config.ARGB_8888);
-        org.opencv.android.Utils.matToBitmap(southEast, bMap);
-        southEast.release();
-        int[] intArray = new int[bMap.getWidth()*bMap.getHeight()];
-        //copy pixel data from the Bitmap into the 'intArray' array
-        bMap.getPixels(intArray, 0, bMap.getWidth(), 0, 0, bMap.getWidth(), bMap.getHeight());
+    /**
+     * Detection geometry of pictures of the given size, built only when the size
+     * or the settings change
+     */
+    private DetectionGeometry getPictureGeometry(Size size) {
+        int width = (int) size.width;
+        int height = (int) size.height;
 
-        LuminanceSource source = new RGBLuminanceSource(bMap.getWidth(), bMap.getHeight(),intArray);
+        // pictures are detected at the height calibrated on the preview
+        int detectionHeight = mAnalyzer.getDetectionHeight();
 
-        BinaryBitmap bitmap = new BinaryBitmap(new HybridBinarizer(source));
+        DetectionGeometry geometry = mPictureGeometry;
 
-        Result[] results = {};
-        try {
-            results = qrCodeMultiReader.decodeMultiple(bitmap);
-        } catch (NotFoundException e) {
+        if (geometry == null || !geometry.matches(width, height, mDocumentAspectRatio, mBugRotate, detectionHeight)) {
+            geometry = new DetectionGeometry(width, height, mDocumentAspectRatio, mBugRotate, detectionHeight);
+            mPictureGeometry = geometry;
         }
 
-        return results;
-
-    }
-
-    public void setBugRotate(boolean bugRotate) {
-        mBugRotate = bugRotate;
+        return geometry;
     }
 }
@@ -25,6 +25,7 @@ import android.view.*
 import android.widget.Button
 import android.widget.ImageView
 import android.widget.RelativeLayout
+import android.widget.TextView
 import android.widget.Toast
 import androidx.appcompat.app.AppCompatActivity
 import androidx.exifinterface.media.ExifInterface
@@ -34,6 +35,12 @@ import com.google.android.material.navigation.NavigationView
 import com.permissionx.guolindev.PermissionX
 import com.todobom.opennotescanner.helpers.*
 import com.todobom.opennotescanner.helpers.ScanTopicDialogFragment.SetTopicDialogListener
+import com.todobom.opennotescanner.processing.FrameRecorder
+import com.todobom.opennotescanner.processing.FrameSource
+import com.todobom.opennotescanner.processing.MatTracker
+import com.todobom.opennotescanner.processing.PipelineMetrics
+import com.todobom.opennotescanner.processing.PipelineMetrics.Stage
+import com.todobom.opennotescanner.processing.PreviewSizePolicy
 import com.todobom.opennotescanner.views.HUDCanvasView
 import org.matomo.sdk.Tracker
 import org.matomo.sdk.extra.TrackHelper
@@ -43,9 +50,7 @@ import org.opencv.core.CvType
 import org.opencv.core.Mat
 import org.opencv.core.MatOfByte
 import org.opencv.core.MatOfInt
-import org.opencv.core.Size
 import org.opencv.imgcodecs.Imgcodecs
-import org.opencv.imgproc.Imgproc
 import java.io.*
 import java.text.SimpleDateFormat
 import java.util.*
@@ -55,7 +60,7 @@ import java.util.*
  * status bar and navigation/system bar) with user interaction.
  */
 class OpenNoteScannerActivity : AppCompatActivity(), NavigationView.OnNavigationItemSelectedListener,
-        SurfaceHolder.Callback, PictureCallback, PreviewCallback, SetTopicDialogListener, SensorEventListener {
+        SurfaceHolder.Callback, PictureCallback, FrameSource.Listener, SetTopicDialogListener, SensorEventListener {
     var mDocumentAspectRatio: Double = 0.0
     private val mHideHandler = Handler()
     private lateinit var mContentView: View
@@ -86,6 +91,21 @@ class OpenNoteScannerActivity : AppCompatActivity(), NavigationView.OnNavigation
     private lateinit var mImageProcessor: ImageProcessor
     private var mSurfaceHolder: SurfaceHolder? = null
     private var mCamera: Camera? = null
+    private var mPreviewBufferPool: PreviewBufferPool? = null
+    private var mFrameSource: FrameSource? = null
+    // debug recording of the preview frames, see FrameRecorder
+    @Volatile
+    private var mFrameRecorder: FrameRecorder? = null
+    private var mRecordPreview = false
+    private val mMetrics = PipelineMetrics.getInstance()
+    private val mMats = MatTracker.getInstance()
+    private lateinit var mMetricsOverlay: TextView
+    private val mMetricsRefresh: Runnable = object : Runnable {
+        override fun run() {
+            mMetricsOverlay.text = mMetrics.summary() + mMats.summary()
+            mHideHandler.postDelayed(this, METRICS_REFRESH_DELAY)
+        }
+    }
     private lateinit var mThis: OpenNoteScannerActivity
     private var mFocused = false
     var hUD: HUDCanvasView? = null
@@ -97,21 +117,19 @@ class OpenNoteScannerActivity : AppCompatActivity(), NavigationView.OnNavigation
     private val mDateFormat = SimpleDateFormat("yyyy:MM:dd HH:mm:ss")
     private var scanTopic: String? = null
     private var mat: Mat? = null
+    // trace id of the capture in flight, 0 when not traced
+    @Volatile
+    private var mCaptureId = 0
     private lateinit var tracker: Tracker
 
     private lateinit var sensorManager: SensorManager
     lateinit var accelerometerReading: FloatArray
     lateinit var magnetometerReading: FloatArray
 
-    fun setImageProcessorBusy(imageProcessorBusy: Boolean) {
-        this.imageProcessorBusy = imageProcessorBusy
-    }
-
     fun setAttemptToFocus(attemptToFocus: Boolean) {
         this.attemptToFocus = attemptToFocus
     }
 
-    private var imageProcessorBusy = true
     private var attemptToFocus = false
     override fun onCreate(savedInstanceState: Bundle?) {
         super.onCreate(savedInstanceState)
@@ -132,6 +150,11 @@ class OpenNoteScannerActivity : AppCompatActivity(), NavigationView.OnNavigation
         mContentView = findViewById(R.id.surfaceView)
         hUD = findViewById(R.id.hud)
         mWaitSpinner = findViewById(R.id.wait_spinner)
+        mMetricsOverlay = findViewById(R.id.metrics_overlay)
+        mMetricsOverlay.setOnLongClickListener {
+            dumpMetrics()
+            true
+        }
 
         sensorManager = getSystemService(Context.SENSOR_SERVICE) as SensorManager
 
@@ -157,14 +180,14 @@ class OpenNoteScannerActivity : AppCompatActivity(), NavigationView.OnNavigation
         colorModeButton.setOnClickListener { v: View ->
             colorMode = !colorMode
             (v as ImageView).setColorFilter(if (colorMode) -0x1 else -0x5f0f60)
-            sendImageProcessorMessage("colorMode", colorMode)
+            mImageProcessor.setColorMode(colorMode)
             Toast.makeText(applicationContext, if (colorMode) R.string.colorMode else R.string.bwMode, Toast.LENGTH_SHORT).show()
         }
         val filterModeButton = findViewById<ImageView>(R.id.filterModeButton)
         filterModeButton.setOnClickListener { v: View ->
             filterMode = !filterMode
             (v as ImageView).setColorFilter(if (filterMode) -0x1 else -0x5f0f60)
-            sendImageProcessorMessage("filterMode", filterMode)
+            mImageProcessor.setFilterMode(filterMode)
             Toast.makeText(applicationContext, if (filterMode) R.string.filterModeOn else R.string.filterModeOff, Toast.LENGTH_SHORT).show()
         }
         val flashModeButton = findViewById<ImageView>(R.id.flashModeButton)
@@ -341,11 +364,44 @@ class OpenNoteScannerActivity : AppCompatActivity(), NavigationView.OnNavigation
             return;
         }
 
+        if (::mImageProcessor.isInitialized) {
+            mImageProcessor.shutdown()
+            mImageThread.quitSafely()
+        }
+
         //TODO these should go in the variable's creation
         mImageThread = HandlerThread("Worker Thread")
         mImageThread.start()
         mImageProcessor = ImageProcessor(mImageThread.looper, this)
-        setImageProcessorBusy(false)
+        mImageProcessor.setColorMode(colorMode)
+        mImageProcessor.setFilterMode(filterMode)
+
+        CaptureTrace.isEnabled = BuildConfig.TRACE_CAPTURE || mSharedPref.getBoolean("trace_capture", false)
+
+        val showMetrics = mSharedPref.getBoolean("debug_metrics", false)
+        mMetrics.isEnabled = showMetrics
+        mMats.isEnabled = BuildConfig.DEBUG || showMetrics
+        mRecordPreview = mSharedPref.getBoolean("record_preview", false)
+        mMetricsOverlay.visibility = if (showMetrics) View.VISIBLE else View.GONE
+        mHideHandler.removeCallbacks(mMetricsRefresh)
+        if (showMetrics) {
+            mHideHandler.post(mMetricsRefresh)
+        }
+    }
+
+    /**
+     * Writes the collected pipeline timings as JSON to the app files directory
+     */
+    private fun dumpMetrics() {
+        val timeStamp = SimpleDateFormat("yyyyMMdd-HHmmss", Locale.US).format(Date())
+        val file = File(getExternalFilesDir(null), "metrics-$timeStamp.json")
+        try {
+            FileWriter(file).use { it.write(mMetrics.toJson()) }
+            Log.d(TAG, "pipeline metrics written to " + file.absolutePath)
+            Toast.makeText(this, getString(R.string.debug_metrics_saved, file.absolutePath), Toast.LENGTH_LONG).show()
+        } catch (e: IOException) {
+            Log.e(TAG, "failed writing pipeline metrics", e)
+        }
     }
 
     fun waitSpinnerVisible() {
@@ -364,6 +420,8 @@ class OpenNoteScannerActivity : AppCompatActivity(), NavigationView.OnNavigation
     private var mFlashMode = false
     public override fun onPause() {
         super.onPause()
+        mHideHandler.removeCallbacks(mMetricsRefresh)
+        stopPreviewRecording()
     }
 
     public override fun onDestroy() {
@@ -398,6 +456,27 @@ class OpenNoteScannerActivity : AppCompatActivity(), NavigationView.OnNavigation
             }
             return curRes
         }
+    /**
+     * Smallest preview with the aspect ratio of the largest picture that still holds
+     * enough pixels for the detection and the QR code, see PreviewSizePolicy.
+     * Falls back to the widest preview when no preview has that aspect ratio.
+     * The detection needs the height calibrated for the camera, if any.
+     */
+    fun getAnalysisPreviewResolution(cameraId: Int): Camera.Size? {
+        val picture = pictureResolutionList.maxByOrNull { it.width * it.height }
+                ?: return maxPreviewResolution
+        val previews = resolutionList
+        val sizes = Array(previews.size) { intArrayOf(previews[it].width, previews[it].height) }
+        val detectionHeight = ImageProcessor.getCalibratedDetectionHeight(mSharedPref, cameraId)
+        val minHeight = PreviewSizePolicy.getRequiredHeight(detectionHeight)
+        val index = PreviewSizePolicy.choose(sizes, picture.width.toDouble() / picture.height, minHeight)
+        if (index < 0) {
+            return maxPreviewResolution
+        }
+        Log.d(TAG, "analysis preview resolution: " + previews[index].width + "x" + previews[index].height
+                + " for picture " + picture.width + "x" + picture.height + ", at least " + minHeight + " high")
+        return previews[index]
+    }
     val pictureResolutionList: List<Camera.Size>
         get() {
             val camera = mCamera ?: return emptyList()
@@ -486,8 +565,8 @@ class OpenNoteScannerActivity : AppCompatActivity(), NavigationView.OnNavigation
     }
 
     override fun surfaceCreated(holder: SurfaceHolder) {
+        val cameraId = findBestCamera()
         val camera = try {
-            val cameraId = findBestCamera()
             Camera.open(cameraId) as Camera
         } catch (e: RuntimeException) {
             return
@@ -496,7 +575,7 @@ class OpenNoteScannerActivity : AppCompatActivity(), NavigationView.OnNavigation
 
         val param  = camera.getParameters()
         param.pictureFormat = ImageFormat.JPEG
-        val pSize = maxPreviewResolution
+        val pSize = getAnalysisPreviewResolution(cameraId)
         param.setPreviewSize(pSize!!.width, pSize.height)
         val previewRatio = pSize.width.toFloat() / pSize.height
         val display = windowManager.defaultDisplay
@@ -570,6 +649,7 @@ class OpenNoteScannerActivity : AppCompatActivity(), NavigationView.OnNavigation
             camera.setDisplayOrientation(90)
         }
         mImageProcessor.setBugRotate(mBugRotate)
+        mImageProcessor.setCameraId(cameraId)
 
         setFocusParameters()
 
@@ -593,36 +673,107 @@ class OpenNoteScannerActivity : AppCompatActivity(), NavigationView.OnNavigation
         try {
             camera.setPreviewDisplay(mSurfaceHolder)
             camera.startPreview()
-            camera.setPreviewCallback(this)
+            attachPreviewBuffers(camera)
         } catch (e: Exception) {
         }
     }
 
+    /**
+     * Feeds the preview through a pool of reusable buffers, the pool is only
+     * rebuilt when the preview size changes
+     */
+    private fun attachPreviewBuffers(camera: Camera) {
+        val previewSize = camera.parameters.previewSize
+        var pool = mPreviewBufferPool
+        if (pool == null || !pool.matches(previewSize.width, previewSize.height)) {
+            pool?.release()
+            pool = PreviewBufferPool(previewSize.width, previewSize.height)
+            mPreviewBufferPool = pool
+            Log.d(TAG, "preview buffer pool created for " + previewSize.width + "x" + previewSize.height)
+        } else {
+            Log.d(TAG, pool.toString())
+        }
+        mFrameSource?.stop()
+        val source = CameraFrameSource(camera, pool)
+        mFrameSource = source
+        startPreviewRecording(previewSize.width, previewSize.height)
+        source.start(this)
+    }
+
+    /**
+     * Starts a raw dump of the preview frames when the debug setting is on, it can be
+     * played back with ReplayFrameSource to reproduce performance problems offline
+     */
+    private fun startPreviewRecording(width: Int, height: Int) {
+        if (!mRecordPreview || mFrameRecorder?.matches(width, height) == true) return
+        stopPreviewRecording()
+        val timeStamp = SimpleDateFormat("yyyyMMdd-HHmmss", Locale.US).format(Date())
+        val file = File(getExternalFilesDir(null), "preview-$timeStamp.nv21")
+        try {
+            mFrameRecorder = FrameRecorder(FileOutputStream(file), width, height)
+            Log.d(TAG, "recording preview to " + file.absolutePath)
+        } catch (e: IOException) {
+            Log.e(TAG, "failed starting the preview recording", e)
+        }
+    }
+
+    private fun stopPreviewRecording() {
+        val recorder = mFrameRecorder ?: return
+        mFrameRecorder = null
+        try {
+            recorder.close()
+            Log.d(TAG, "preview recording ended, frames: " + recorder.recordedFrames + " skipped: " + recorder.skippedFrames)
+        } catch (e: IOException) {
+            Log.e(TAG, "failed writing the preview recording", e)
+        }
+    }
+
     override fun surfaceDestroyed(holder: SurfaceHolder) {
         val camera = mCamera ?: return
         camera.stopPreview()
-        camera.setPreviewCallback(null)
+        mFrameSource?.stop()
+        mFrameSource = null
+        stopPreviewRecording()
+        mPreviewBufferPool?.let {
+            Log.d(TAG, it.toString())
+            it.release()
+        }
+        mPreviewBufferPool = null
         camera.release()
         mCamera = null
     }
 
-    override fun onPreviewFrame(data: ByteArray, camera: Camera) {
-        val pictureSize = camera.parameters.previewSize
-        Log.v(TAG, "onPreviewFrame - received image " + pictureSize.width + "x" + pictureSize.height
-                + " focused: " + mFocused + " imageprocessor: " + if (imageProcessorBusy) "busy" else "available")
-        if (mFocused && !imageProcessorBusy) {
-            setImageProcessorBusy(true)
-            val yuv = Mat(Size(pictureSize.width.toDouble(), pictureSize.height * 1.5), CvType.CV_8UC1)
-            yuv.put(0, 0, data)
-            val mat = Mat(Size(pictureSize.width.toDouble(), pictureSize.height.toDouble()), CvType.CV_8UC4)
-            Imgproc.cvtColor(yuv, mat, Imgproc.COLOR_YUV2RGBA_NV21, 4)
-            yuv.release()
-            sendImageProcessorMessage("previewFrame", PreviewFrame(mat, autoMode, !(autoMode || scanClicked)))
+    override fun onFrame(source: FrameSource, data: ByteArray, width: Int, height: Int) {
+        val pool = mPreviewBufferPool
+        if (pool == null || !pool.matches(width, height)) {
+            source.recycle(data)
+            return
         }
+
+        mFrameRecorder?.record(data, SystemClock.elapsedRealtimeNanos())
+
+        if (mFocused) {
+            val mat = pool.acquireFrameMat()
+            if (mat != null) {
+                // detection only needs luminance, colour is only decoded for captured pictures
+                val start = mMetrics.start()
+                PreviewBufferPool.copyLuminance(data, mat)
+                mMetrics.stop(Stage.PREVIEW_NV21, start)
+                // the buffer stays with the frame for QR decoding and goes back to the source on release
+                val previewFrame = PreviewFrame(mat, data, autoMode, !(autoMode || scanClicked), pool, source)
+                if (mImageProcessor.postPreviewFrame(previewFrame)) {
+                    return
+                }
+                pool.recycleFrameMat(mat)
+            }
+        }
+
+        pool.frameDropped()
+        source.recycle(data)
     }
 
     fun invalidateHUD() {
-        runOnUiThread { hUD!!.invalidate() }
+        hUD?.requestRender()
     }
 
     private inner class ResetShutterColor : Runnable {
@@ -638,10 +789,15 @@ class OpenNoteScannerActivity : AppCompatActivity(), NavigationView.OnNavigation
         if (safeToTakePicture) {
             runOnUiThread(resetShutterColor)
             safeToTakePicture = false
+            val captureId = CaptureTrace.beginCapture()
+            mCaptureId = captureId
+            CaptureTrace.beginAsync(CaptureTrace.SHUTTER, captureId)
             try {
                 camera.takePicture(null, null, mThis)
             }  catch (_: java.lang.Exception) {
                 Log.e(TAG, "failed to take picture")
+                CaptureTrace.endAsync(CaptureTrace.SHUTTER, captureId)
+                CaptureTrace.endCapture(captureId)
             }
             return true
         }
@@ -649,27 +805,55 @@ class OpenNoteScannerActivity : AppCompatActivity(), NavigationView.OnNavigation
     }
 
     override fun onPictureTaken(data: ByteArray, camera: Camera) {
+        CaptureTrace.endAsync(CaptureTrace.SHUTTER, mCaptureId)
+        val section = CaptureTrace.beginSection("onPictureTaken")
+        try {
+            decodeTakenPicture(data)
+        } finally {
+            CaptureTrace.endSection(section)
+        }
+    }
+
+    private fun decodeTakenPicture(data: ByteArray) {
         shootSound()
         setFocusParameters()
         Log.d(TAG, "onPictureTaken - received ${data.size} bytes")
 
-        val encodedMat = MatOfByte(*data) // or MatOfByte(data)
+        // native memory allocated from here on is accounted to this capture
+        mMats.beginCapture()
+
+        val encodedMat = mMats.track(MatOfByte(*data), "onPictureTaken.encoded")
         val decodedMat: Mat
+        val decodeStart = mMetrics.start()
+        // B/W scans only need the luminance, the decoder then skips the colour conversion and
+        // everything up to the enhancement holds a third of the bytes. Unlike IMREAD_UNCHANGED,
+        // IMREAD_GRAYSCALE would apply the EXIF orientation, it is ignored to keep the geometry.
+        val decodeFlags = if (mImageProcessor.isColorNeeded) {
+            Imgcodecs.IMREAD_UNCHANGED
+        } else {
+            Imgcodecs.IMREAD_GRAYSCALE or Imgcodecs.IMREAD_IGNORE_ORIENTATION
+        }
+        val decodeSection = CaptureTrace.beginSection("imdecode")
         try {
-            decodedMat = Imgcodecs.imdecode(encodedMat, Imgcodecs.IMREAD_UNCHANGED)
+            decodedMat = mMats.track(Imgcodecs.imdecode(encodedMat, decodeFlags), "onPictureTaken.imdecode")
+            mMetrics.stop(Stage.CAPTURE_DECODE, decodeStart)
             if (decodedMat.empty()) {
                 Log.e(TAG, "Failed to decode image from data byte array.")
+                mMats.release(decodedMat)
+                CaptureTrace.endCapture(mCaptureId)
                 refreshCamera() // Or some other error recovery
                 safeToTakePicture = true
                 return
             }
         } catch (e: Exception) {
             Log.e(TAG, "Exception while decoding image: ${e.message}")
+            CaptureTrace.endCapture(mCaptureId)
             refreshCamera()
             safeToTakePicture = true
             return
         } finally {
-            encodedMat.release() // Release the temporary MatOfByte
+            CaptureTrace.endSection(decodeSection)
+            mMats.release(encodedMat) // Release the temporary MatOfByte
         }
 
         Log.d(TAG, "Decoded image: ${decodedMat.width()}x${decodedMat.height()}, type: ${CvType.typeToString(decodedMat.type())}")
@@ -694,21 +878,18 @@ class OpenNoteScannerActivity : AppCompatActivity(), NavigationView.OnNavigation
     }
 
     private fun issueProcessingOfTakenPicture() {
-        setImageProcessorBusy(true)
-        sendImageProcessorMessage("pictureTaken", mat)
+        mat?.let { mImageProcessor.postPicture(it, mCaptureId) }
+        mat = null
         scanClicked = false
         safeToTakePicture = true
     }
 
-    fun sendImageProcessorMessage(messageText: String, obj: Any?) {
-        Log.v(TAG, "sending message to ImageProcessor: $messageText - $obj")
-        val msg = mImageProcessor.obtainMessage()
-        msg.obj = OpenNoteMessage(messageText, obj)
-        mImageProcessor.sendMessage(msg)
-    }
-
     fun saveDocument(scannedDocument: ScannedDocument) {
         val doc = scannedDocument.processed ?: scannedDocument.original
+        val captureId = scannedDocument.captureId
+        val section = CaptureTrace.beginSection("saveDocument")
+        // the capture trace ends with the animation when there is one
+        var animated = false
 
         val intent = intent
         val isIntentCapture = intent.action == "android.media.action.IMAGE_CAPTURE"
@@ -721,7 +902,7 @@ class OpenNoteScannerActivity : AppCompatActivity(), NavigationView.OnNavigation
         val imageSuffix = if (mSharedPref.getBoolean("save_png", false)) ".png" else ".jpg"
         val mimeType = if (imageSuffix == ".png") "image/png" else "image/jpeg"
 
-        val encodingParams = MatOfInt()
+        val encodingParams = mMats.track(MatOfInt(), "saveDocument.encodingParams")
         if (imageSuffix == ".jpg") {
             encodingParams.fromArray(Imgcodecs.IMWRITE_JPEG_QUALITY, mSharedPref.getInt("jpeg_quality", 95)) // Example: get quality from prefs
         } else {
@@ -738,6 +919,10 @@ class OpenNoteScannerActivity : AppCompatActivity(), NavigationView.OnNavigation
         var savedFileUri: Uri? = null
         var preQFilePath: String? = null // pre android Q file path
 
+        // the MediaStore write stage spans from the insert to the pending flag update, without encoding
+        val writeStart = mMetrics.start()
+        var encodeNanos = 0L
+
         try {
             // if intent has no target uri, we just handle it as if it was a normal document scanned from the app
             if (isIntentCapture && outputUriFromIntent != null) {
@@ -796,19 +981,23 @@ class OpenNoteScannerActivity : AppCompatActivity(), NavigationView.OnNavigation
 
             savedFileUri.let { uri ->
                 contentResolver.openOutputStream(uri)?.use { out ->
-                    val endDoc = Mat()
-                    Core.flip(doc.t(), endDoc, 1)
+                    val encodeStart = System.nanoTime()
+                    // transpose into endDoc, a doc.t() temporary would never be released
+                    val endDoc = mMats.track(Mat(), "saveDocument.endDoc")
+                    Core.transpose(doc, endDoc)
+                    Core.flip(endDoc, endDoc, 1)
 
                     // Convert Mat to byte array
-                    val matOfByte = org.opencv.core.MatOfByte()
+                    val matOfByte = mMats.track(org.opencv.core.MatOfByte(), "saveDocument.encoded")
                     val successEncode = Imgcodecs.imencode(imageSuffix, endDoc, matOfByte, encodingParams)
-                    endDoc.release() // Release the temporary transformed Mat
+                    mMats.release(endDoc) // Release the temporary transformed Mat
 
                     if (!successEncode) {
                         throw IOException("Failed to encode Mat to $imageSuffix")
                     }
                     val imageBytes = matOfByte.toArray()
-                    matOfByte.release()
+                    mMats.release(matOfByte)
+                    encodeNanos = System.nanoTime() - encodeStart
 
                     out.write(imageBytes)
                     Log.d(TAG, "Successfully wrote image data.")
@@ -822,7 +1011,13 @@ class OpenNoteScannerActivity : AppCompatActivity(), NavigationView.OnNavigation
                 contentResolver.update(savedFileUri, updateDetails, null, null)
             }
 
+            if (writeStart != 0L) {
+                mMetrics.record(Stage.CAPTURE_ENCODE, encodeNanos)
+                mMetrics.record(Stage.CAPTURE_WRITE, System.nanoTime() - writeStart - encodeNanos)
+            }
+
             if (mimeType == "image/jpeg") {
+                val exifStart = mMetrics.start()
                 try {
                     contentResolver.openFileDescriptor(savedFileUri, "rw")?.use { pfd ->
                         val exif = ExifInterface(pfd.fileDescriptor)
@@ -838,6 +1033,7 @@ class OpenNoteScannerActivity : AppCompatActivity(), NavigationView.OnNavigation
                 } catch (e: Exception) {
                     Log.e(TAG, "Error writing Exif to MediaStore URI: ${e.message}", e)
                 }
+                mMetrics.stop(Stage.CAPTURE_EXIF, exifStart)
             }
 
             if (isIntentCapture) {
@@ -850,6 +1046,7 @@ class OpenNoteScannerActivity : AppCompatActivity(), NavigationView.OnNavigation
             } else {
                 Log.d(TAG, "Document saved to MediaStore: $savedFileUri")
                 animateDocument(savedFileUri, scannedDocument)
+                animated = true
 
                 TrackHelper.track().event("Picture", "PictureTaken").with(tracker)
                 refreshCamera()
@@ -884,12 +1081,17 @@ class OpenNoteScannerActivity : AppCompatActivity(), NavigationView.OnNavigation
                 refreshCamera()
             }
         } finally {
-            encodingParams.release()
+            mMats.release(encodingParams)
+            if (!animated) {
+                CaptureTrace.endCapture(captureId)
+            }
+            CaptureTrace.endSection(section)
         }
     }
 
     private fun animateDocument(documentUri: Uri, quadrilateral: ScannedDocument) {
         val runnable = AnimationRunnable(this, documentUri, quadrilateral)
+        CaptureTrace.beginAsync(CaptureTrace.ANIMATION_QUEUE, quadrilateral.captureId)
         runOnUiThread(runnable)
     }
 
@@ -939,6 +1141,7 @@ class OpenNoteScannerActivity : AppCompatActivity(), NavigationView.OnNavigation
         private const val MY_PERMISSIONS_REQUEST_WRITE = 3
         private const val RESUME_PERMISSIONS_REQUEST_CAMERA = 11
         private const val TAG = "OpenNoteScannerActivity"
+        private const val METRICS_REFRESH_DELAY = 500L
     }
 
     // Get readings from accelerometer and magnetometer. To simplify calculations,
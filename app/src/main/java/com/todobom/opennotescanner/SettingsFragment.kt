@@ -35,6 +35,10 @@ class SettingsFragment : PreferenceFragment(), OnSharedPreferenceChangeListener
     }
 
     override fun onSharedPreferenceChanged(sharedPreferences: SharedPreferences, key: String?) {
+        if (key == "auto_detection_height") {
+            // heights tuned before the setting was toggled may be stale, tune them again
+            ImageProcessor.clearDetectionHeights(sharedPreferences)
+        }
         updatePreference(findPreference(key), key)
     }
 
@@ -18,8 +18,20 @@ class AnimationRunnable(private val activity: OpenNoteScannerActivity, private v
     private val previewPoints: Array<Point>? = if(document.quadrilateral != null) document.previewPoints else null
     private val previewSize: Size? = if(document.quadrilateral != null) document.previewSize else null
     private var bitmap: Bitmap? = null
+    private val captureId = document.captureId
 
     override fun run() {
+        CaptureTrace.endAsync(CaptureTrace.ANIMATION_QUEUE, captureId)
+        val section = CaptureTrace.beginSection("AnimationRunnable")
+        try {
+            animate()
+        } finally {
+            CaptureTrace.endSection(section)
+            CaptureTrace.endCapture(captureId)
+        }
+    }
+
+    private fun animate() {
         val imageView = activity.findViewById<View>(R.id.scannedAnimation) as ImageView
         val display = activity.windowManager.defaultDisplay
         val size = android.graphics.Point()
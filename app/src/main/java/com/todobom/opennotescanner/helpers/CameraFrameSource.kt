@@ -0,0 +1,42 @@
+package com.todobom.opennotescanner.helpers
+
+import android.hardware.Camera
+import com.todobom.opennotescanner.processing.FrameSource
+
+/**
+ * The live camera preview as a [FrameSource], frames arrive in the buffers of [pool]
+ * and go back to the camera when recycled
+ */
+class CameraFrameSource(private val camera: Camera, val pool: PreviewBufferPool) : FrameSource, Camera.PreviewCallback {
+
+    @Volatile
+    private var listener: FrameSource.Listener? = null
+
+    override fun start(listener: FrameSource.Listener) {
+        this.listener = listener
+        // setting the callback clears the buffer queue of the camera
+        camera.setPreviewCallbackWithBuffer(this)
+        pool.attach(camera)
+    }
+
+    override fun stop() {
+        listener = null
+        camera.setPreviewCallbackWithBuffer(null)
+        pool.detach()
+    }
+
+    override fun recycle(data: ByteArray) {
+        pool.recycleBuffer(data)
+    }
+
+    override fun onPreviewFrame(data: ByteArray, camera: Camera) {
+        val listener = listener ?: return
+        if (!pool.owns(data)) {
+            // not one of our buffers, the framework allocated it for this frame
+            pool.foreignFrameReceived()
+            return
+        }
+        pool.frameReceived(data)
+        listener.onFrame(this, data, pool.width, pool.height)
+    }
+}
@@ -0,0 +1,76 @@
+package com.todobom.opennotescanner.helpers
+
+import android.os.Build
+import android.os.Trace
+import com.todobom.opennotescanner.BuildConfig
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Systrace / Perfetto markers of the capture path, from the shutter request to
+ * the saved document animation.
+ *
+ * Every capture gets an id, used as cookie of the async events spanning the
+ * hand-offs between threads, so a single trace shows the whole shutter latency
+ * and where it waits. Nothing is emitted unless the build has TRACE_CAPTURE set
+ * (`-PtraceCapture=true`) or the trace setting is on.
+ */
+object CaptureTrace {
+    const val CAPTURE = "capture"
+    const val SHUTTER = "capture.shutter"
+    const val PROCESSING_QUEUE = "capture.processingQueue"
+    const val ANIMATION_QUEUE = "capture.animationQueue"
+
+    @Volatile
+    @JvmStatic
+    var isEnabled = BuildConfig.TRACE_CAPTURE
+
+    private val nextCaptureId = AtomicInteger()
+
+    /**
+     * Starts the trace of a new capture
+     *
+     * @return the id of the capture, 0 when tracing is off
+     */
+    @JvmStatic
+    fun beginCapture(): Int {
+        if (!isEnabled) return 0
+        val captureId = nextCaptureId.incrementAndGet()
+        beginAsync(CAPTURE, captureId)
+        return captureId
+    }
+
+    @JvmStatic
+    fun endCapture(captureId: Int) {
+        endAsync(CAPTURE, captureId)
+    }
+
+    @JvmStatic
+    fun beginAsync(name: String, captureId: Int) {
+        if (captureId == 0 || Build.VERSION.SDK_INT < Build.VERSION_CODES.Q) return
+        Trace.beginAsyncSection(name, captureId)
+    }
+
+    @JvmStatic
+    fun endAsync(name: String, captureId: Int) {
+        if (captureId == 0 || Build.VERSION.SDK_INT < Build.VERSION_CODES.Q) return
+        Trace.endAsyncSection(name, captureId)
+    }
+
+    /**
+     * Opens a section on the calling thread, must be closed by [endSection]
+     * on the same thread even when tracing was turned off in between
+     */
+    @JvmStatic
+    fun beginSection(name: String): Boolean {
+        if (!isEnabled) return false
+        Trace.beginSection(name)
+        return true
+    }
+
+    @JvmStatic
+    fun endSection(begun: Boolean) {
+        if (begun) {
+            Trace.endSection()
+        }
+    }
+}
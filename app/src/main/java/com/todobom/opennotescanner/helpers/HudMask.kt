@@ -0,0 +1,50 @@
+package com.todobom.opennotescanner.helpers
+
+import android.graphics.Color
+import android.graphics.Paint
+import android.graphics.Path
+import android.graphics.drawable.shapes.PathShape
+import com.todobom.opennotescanner.processing.DetectionGeometry
+
+/**
+ * Shades everything outside the document area of a [DetectionGeometry] on the HUD,
+ * [shape] is null when no page format is set
+ */
+class HudMask(geometry: DetectionGeometry) {
+    val shape: PathShape? = buildShape(geometry)
+
+    val paint = Paint().apply {
+        color = Color.argb(64, 255, 255, 255)
+    }
+
+    val border = Paint().apply {
+        color = Color.argb(32, 255, 255, 255)
+        strokeWidth = 5f
+    }
+
+    private fun buildShape(geometry: DetectionGeometry): PathShape? {
+        val area = geometry.documentArea ?: return null
+
+        // ATTENTION: axis are swapped
+        val previewWidth = geometry.frameHeight.toFloat()
+        val previewHeight = geometry.frameWidth.toFloat()
+
+        val path = Path()
+
+        path.moveTo(0f, 0f)
+        path.lineTo(previewWidth, 0f)
+        path.lineTo(previewWidth, previewHeight)
+        path.lineTo(0f, previewHeight)
+        path.close()
+
+        path.moveTo(area[1].toFloat(), area[0].toFloat())
+        path.lineTo(area[1].toFloat(), area[2].toFloat())
+        path.lineTo(area[3].toFloat(), area[2].toFloat())
+        path.lineTo(area[3].toFloat(), area[0].toFloat())
+        path.close()
+
+        path.fillType = Path.FillType.EVEN_ODD
+
+        return PathShape(path, previewWidth, previewHeight)
+    }
+}
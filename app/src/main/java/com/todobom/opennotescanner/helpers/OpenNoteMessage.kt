@@ -1,3 +0,0 @@
-package com.todobom.opennotescanner.helpers
-
-data class OpenNoteMessage(val command: String, val obj: Any?)
\ No newline at end of file
@@ -0,0 +1,187 @@
+package com.todobom.opennotescanner.helpers
+
+import android.graphics.ImageFormat
+import android.hardware.Camera
+import org.opencv.core.CvType
+import org.opencv.core.Mat
+import java.util.*
+
+/**
+ * Reusable buffers for the camera preview path, keyed by preview size.
+ *
+ * The byte arrays are handed to the camera with [Camera.addCallbackBuffer] so the
+ * framework writes NV21 data into them instead of allocating a new array per frame,
+ * and the native [Mat]s holding the luminance plane of the frames handed to the
+ * image processor are allocated once per size.
+ * Every allocation done by the pool goes through [allocations], so after the warm up
+ * [steadyStateAllocationsPerFrame] is expected to stay at zero.
+ */
+class PreviewBufferPool(val width: Int, val height: Int, bufferCount: Int = DEFAULT_BUFFER_COUNT,
+                        frameMatCount: Int = DEFAULT_FRAME_MAT_COUNT) {
+
+    val bufferSize: Int = width * height * ImageFormat.getBitsPerPixel(ImageFormat.NV21) / 8
+
+    private val buffers = ArrayList<ByteArray>(bufferCount)
+    private val heldBuffers = Collections.newSetFromMap(IdentityHashMap<ByteArray, Boolean>())
+    private val freeFrameMats = ArrayDeque<Mat>(frameMatCount)
+    private var camera: Camera? = null
+    private var released = false
+
+    var allocations = 0L
+        private set
+    var framesReceived = 0L
+        private set
+    var framesDropped = 0L
+        private set
+    private var warmAllocations = 0L
+    private var warmFrames = 0L
+
+    init {
+        for (i in 0 until bufferCount) {
+            buffers.add(ByteArray(bufferSize))
+            allocations++
+        }
+        for (i in 0 until frameMatCount) {
+            freeFrameMats.add(Mat(height, width, CvType.CV_8UC1))
+            allocations++
+        }
+    }
+
+    fun matches(width: Int, height: Int): Boolean {
+        return this.width == width && this.height == height
+    }
+
+    fun owns(data: ByteArray): Boolean {
+        if (data.size != bufferSize) return false
+        for (i in buffers.indices) {
+            if (buffers[i] === data) return true
+        }
+        return false
+    }
+
+    /**
+     * Registers every buffer not currently held by the application with the camera.
+     * Must be called after [Camera.setPreviewCallbackWithBuffer], which clears the
+     * camera buffer queue.
+     */
+    @Synchronized
+    fun attach(camera: Camera) {
+        this.camera = camera
+        for (i in buffers.indices) {
+            if (!heldBuffers.contains(buffers[i])) {
+                camera.addCallbackBuffer(buffers[i])
+            }
+        }
+    }
+
+    @Synchronized
+    fun detach() {
+        camera = null
+    }
+
+    /**
+     * Accounts a frame delivered by the camera, the buffer is considered held
+     * by the application until it is given back with [recycleBuffer].
+     */
+    @Synchronized
+    fun frameReceived(data: ByteArray) {
+        heldBuffers.add(data)
+        countFrame()
+    }
+
+    /**
+     * Accounts a frame delivered in an array allocated by the framework, this
+     * happens when the camera runs out of callback buffers or ignores them
+     */
+    @Synchronized
+    fun foreignFrameReceived() {
+        allocations++
+        countFrame()
+    }
+
+    private fun countFrame() {
+        framesReceived++
+        if (framesReceived == WARM_UP_FRAMES) {
+            warmAllocations = allocations
+            warmFrames = framesReceived
+        }
+    }
+
+    @Synchronized
+    fun frameDropped() {
+        framesDropped++
+    }
+
+    @Synchronized
+    fun recycleBuffer(data: ByteArray) {
+        if (!heldBuffers.remove(data)) return
+        val cam = camera ?: return
+        if (!released) {
+            cam.addCallbackBuffer(data)
+        }
+    }
+
+    /**
+     * Returns a free single channel [Mat] of the preview size or null when all
+     * of them are still in use by the image processor
+     */
+    @Synchronized
+    fun acquireFrameMat(): Mat? {
+        if (released) return null
+        return freeFrameMats.pollFirst()
+    }
+
+    @Synchronized
+    fun recycleFrameMat(mat: Mat) {
+        if (released) {
+            mat.release()
+        } else {
+            freeFrameMats.addLast(mat)
+        }
+    }
+
+    val steadyStateAllocationsPerFrame: Double
+        @Synchronized get() {
+            val frames = framesReceived - warmFrames
+            if (warmFrames == 0L || frames == 0L) return 0.0
+            return (allocations - warmAllocations).toDouble() / frames
+        }
+
+    /**
+     * Frees the native memory of the pool, mats still held by the image processor
+     * are freed as soon as they are recycled
+     */
+    @Synchronized
+    fun release() {
+        released = true
+        camera = null
+        heldBuffers.clear()
+        for (mat in freeFrameMats) {
+            mat.release()
+        }
+        freeFrameMats.clear()
+    }
+
+    override fun toString(): String {
+        return "PreviewBufferPool ${width}x$height frames: $framesReceived dropped: $framesDropped " +
+                "allocations: $allocations steady state allocations/frame: $steadyStateAllocationsPerFrame"
+    }
+
+    companion object {
+        // one frame analyzed, one waiting in the mailbox and the rest for the camera
+        const val DEFAULT_BUFFER_COUNT = 4
+        // one frame analyzed, one waiting in the mailbox and one being filled
+        const val DEFAULT_FRAME_MAT_COUNT = 3
+        private const val WARM_UP_FRAMES = 30L
+
+        /**
+         * Copies the luminance plane of a NV21 frame to [dst], a single channel
+         * [Mat] of the preview size. NV21 stores the full resolution Y plane first,
+         * the interleaved chroma that follows is never needed for detection.
+         */
+        @JvmStatic
+        fun copyLuminance(data: ByteArray, dst: Mat) {
+            dst.put(0, 0, data, 0, dst.rows() * dst.cols())
+        }
+    }
+}
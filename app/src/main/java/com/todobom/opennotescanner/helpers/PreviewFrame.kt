@@ -1,5 +1,39 @@
 package com.todobom.opennotescanner.helpers
 
+import com.todobom.opennotescanner.processing.FrameSource
 import org.opencv.core.Mat
 
-data class PreviewFrame(val frame: Mat, val isAutoMode: Boolean, val isPreviewOnly: Boolean)
\ No newline at end of file
+/**
+ * A preview frame handed to the image processor, [frame] holds the luminance
+ * plane while [data] is the NV21 buffer of the [FrameSource] it was copied from.
+ *
+ * The QR decoding copies the crop it needs, so the frame is released as soon as
+ * the analysis returns. Frames are compared by identity, two of them never share
+ * a buffer.
+ */
+class PreviewFrame(val frame: Mat, val data: ByteArray, val isAutoMode: Boolean, val isPreviewOnly: Boolean, private val pool: PreviewBufferPool? = null,
+                   private val source: FrameSource? = null) {
+
+    val width: Int
+        get() = frame.cols()
+
+    val height: Int
+        get() = frame.rows()
+
+    /**
+     * Gives the frame back to its pool and the buffer to the source it came from,
+     * frames created without a pool own their native memory and are simply released
+     */
+    fun release() {
+        if (pool != null) {
+            pool.recycleFrameMat(frame)
+            if (source != null) {
+                source.recycle(data)
+            } else {
+                pool.recycleBuffer(data)
+            }
+        } else {
+            frame.release()
+        }
+    }
+}
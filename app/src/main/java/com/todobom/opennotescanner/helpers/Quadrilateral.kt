@@ -1,6 +0,0 @@
-package com.todobom.opennotescanner.helpers
-
-import org.opencv.core.MatOfPoint
-import org.opencv.core.Point
-
-class Quadrilateral(val contour: MatOfPoint, val points: Array<Point>)
\ No newline at end of file
@@ -1,5 +1,7 @@
 package com.todobom.opennotescanner.helpers
 
+import com.todobom.opennotescanner.processing.MatTracker
+import com.todobom.opennotescanner.processing.Quadrilateral
 import org.opencv.core.Mat
 import org.opencv.core.Point
 import org.opencv.core.Size
@@ -9,10 +11,13 @@ class ScannedDocument(val original: Mat) {
     var quadrilateral: Quadrilateral? = null
     var previewPoints: Array<Point>? = null
     var previewSize: Size? = null
+    // trace id of the capture this document comes from, see CaptureTrace
+    var captureId = 0
 
     fun release() {
-        processed?.release()
-        original.release()
+        val mats = MatTracker.getInstance()
+        mats.release(processed)
+        mats.release(original)
         quadrilateral?.contour?.release()
     }
 }
\ No newline at end of file
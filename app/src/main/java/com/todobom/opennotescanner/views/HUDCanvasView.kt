@@ -2,24 +2,85 @@ package com.todobom.opennotescanner.views
 
 import android.content.Context
 import android.graphics.Canvas
+import android.graphics.Color
 import android.graphics.Paint
+import android.graphics.Path
+import android.graphics.PorterDuff
+import android.graphics.SurfaceTexture
 import android.graphics.drawable.shapes.Shape
+import android.os.Handler
+import android.os.HandlerThread
 import android.util.AttributeSet
-import android.view.View
+import android.view.Choreographer
+import android.view.TextureView
+import org.opencv.core.Point
 
 /**
  * Draw an array of shapes on a canvas
  *
+ * The HUD is a [TextureView] drawn by its own render thread, paced by the display
+ * refresh. Detections only move a target outline, the drawn outline glides towards
+ * it on every display frame, so it stays fluid even when detection runs at a much
+ * lower rate. The render thread sleeps once the outline reached its target.
+ *
+ * The detected document is kept as corner coordinates updated in place, so
+ * following the document does not allocate anything, neither on the detection
+ * side nor on draw.
+ *
  * @author <Claudemir Todo Bom> http://todobom.com
 </Claudemir> */
-class HUDCanvasView : View {
-    private var detectedShape: HUDShape? = null
+class HUDCanvasView : TextureView, TextureView.SurfaceTextureListener {
+    @Volatile
     private var documentBoxShape: HUDShape? = null
-    private val shapes = ArrayList<HUDShape>()
 
-    constructor(context: Context?) : super(context) {}
-    constructor(context: Context?, attrs: AttributeSet?) : super(context, attrs) {}
-    constructor(context: Context?, attrs: AttributeSet?, defStyle: Int) : super(context, attrs, defStyle) {}
+    private val lock = Any()
+    // target corners of the detected document in preview coordinates, with swapped axis
+    private val targetCorners = FloatArray(8)
+    private var detectedVisible = false
+    private var previewWidth = 0f
+    private var previewHeight = 0f
+    private var surfaceAvailable = false
+    private var surfaceWidth = 0
+    private var surfaceHeight = 0
+
+    // render thread state
+    private var renderThread: HandlerThread? = null
+    private var renderHandler: Handler? = null
+    private var choreographer: Choreographer? = null
+    private var frameScheduled = false
+    private val drawnCorners = FloatArray(8)
+    private var drawnVisible = false
+    private var lastFrameTimeNanos = 0L
+    private var resizedShape: Shape? = null
+    private var resizedWidth = 0
+    private var resizedHeight = 0
+
+    private val detectedPath = Path()
+    private val detectedPaint = Paint().apply {
+        color = Color.argb(64, 0, 255, 0)
+    }
+    private val detectedBorder = Paint().apply {
+        color = Color.rgb(0, 255, 0)
+        strokeWidth = 5f
+        style = Paint.Style.STROKE
+    }
+
+    constructor(context: Context?) : super(context!!) {
+        init()
+    }
+
+    constructor(context: Context?, attrs: AttributeSet?) : super(context!!, attrs) {
+        init()
+    }
+
+    constructor(context: Context?, attrs: AttributeSet?, defStyle: Int) : super(context!!, attrs, defStyle) {
+        init()
+    }
+
+    private fun init() {
+        isOpaque = false
+        surfaceTextureListener = this
+    }
 
     inner class HUDShape(val shape: Shape, private val mPaint: Paint, private val mBorder: Paint?) {
         fun draw(canvas: Canvas?) {
@@ -34,40 +95,227 @@ class HUDCanvasView : View {
         }
     }
 
-    override fun onDraw(canvas: Canvas) {
-        super.onDraw(canvas)
-
-        // TODO: consider storing these as member variables to reduce
-        // allocations per draw cycle.
-        val paddingLeft = paddingLeft
-        val paddingTop = paddingTop
-        val paddingRight = paddingRight
-        val paddingBottom = paddingBottom
-        val contentWidth = width - paddingLeft - paddingRight
-        val contentHeight = height - paddingTop - paddingBottom
-        if (documentBoxShape != null) {
-            documentBoxShape!!.shape.resize(contentWidth.toFloat(), contentHeight.toFloat())
-            documentBoxShape!!.draw(canvas)
+    private val frameCallback = Choreographer.FrameCallback { frameTimeNanos -> renderFrame(frameTimeNanos) }
+
+    private val scheduleFrame = Runnable { scheduleFrame() }
+
+    override fun onAttachedToWindow() {
+        super.onAttachedToWindow()
+        val thread = HandlerThread("HUD Render")
+        thread.start()
+        renderThread = thread
+        val handler = Handler(thread.looper)
+        renderHandler = handler
+        // the choreographer of a thread paces the callbacks posted from it
+        handler.post { choreographer = Choreographer.getInstance() }
+    }
+
+    override fun onDetachedFromWindow() {
+        synchronized(lock) {
+            renderHandler = null
+        }
+        renderThread?.quitSafely()
+        renderThread = null
+        super.onDetachedFromWindow()
+    }
+
+    override fun onSurfaceTextureAvailable(surface: SurfaceTexture, width: Int, height: Int) {
+        synchronized(lock) {
+            surfaceAvailable = true
+            surfaceWidth = width
+            surfaceHeight = height
         }
-        if (detectedShape != null) {
-            detectedShape!!.shape.resize(contentWidth.toFloat(), contentHeight.toFloat())
-            detectedShape!!.draw(canvas)
+        requestRender()
+    }
+
+    override fun onSurfaceTextureSizeChanged(surface: SurfaceTexture, width: Int, height: Int) {
+        synchronized(lock) {
+            surfaceWidth = width
+            surfaceHeight = height
         }
+        requestRender()
     }
 
-    fun setDetectedShape(shape: Shape, paint: Paint, border: Paint?) {
-        detectedShape = HUDShape(shape, paint, border)
+    override fun onSurfaceTextureDestroyed(surface: SurfaceTexture): Boolean {
+        synchronized(lock) {
+            surfaceAvailable = false
+        }
+        return true
+    }
+
+    override fun onSurfaceTextureUpdated(surface: SurfaceTexture) {}
+
+    /**
+     * Wakes the render thread up, may be called from any thread
+     */
+    fun requestRender() {
+        synchronized(lock) {
+            renderHandler?.post(scheduleFrame)
+        }
+    }
+
+    // render thread only
+    private fun scheduleFrame() {
+        if (!frameScheduled) {
+            val chor = choreographer ?: return
+            frameScheduled = true
+            lastFrameTimeNanos = 0L
+            chor.postFrameCallback(frameCallback)
+        }
+    }
+
+    // render thread only
+    private fun renderFrame(frameTimeNanos: Long) {
+        frameScheduled = false
+
+        val visible: Boolean
+        val scaleX: Float
+        val scaleY: Float
+        val width: Int
+        val height: Int
+        var moving = false
+
+        synchronized(lock) {
+            if (!surfaceAvailable) {
+                return
+            }
+            width = surfaceWidth
+            height = surfaceHeight
+            visible = detectedVisible && previewWidth != 0f && previewHeight != 0f
+            scaleX = if (visible) width / previewWidth else 1f
+            scaleY = if (visible) height / previewHeight else 1f
+
+            if (visible) {
+                if (!drawnVisible) {
+                    // a new outline appears where it was detected
+                    System.arraycopy(targetCorners, 0, drawnCorners, 0, 8)
+                } else {
+                    val elapsed = if (lastFrameTimeNanos == 0L) FRAME_NANOS else frameTimeNanos - lastFrameTimeNanos
+                    val step = 1f - Math.exp(-elapsed.toDouble() / SMOOTHING_NANOS).toFloat()
+                    for (i in 0 until 8) {
+                        val distance = targetCorners[i] - drawnCorners[i]
+                        if (Math.abs(distance) > SETTLE_DISTANCE) {
+                            drawnCorners[i] += distance * step
+                            moving = true
+                        } else {
+                            drawnCorners[i] = targetCorners[i]
+                        }
+                    }
+                }
+            }
+            drawnVisible = visible
+        }
+        lastFrameTimeNanos = frameTimeNanos
+
+        val canvas = lockCanvas() ?: return
+        try {
+            canvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR)
+
+            documentBoxShape?.let {
+                if (it.shape !== resizedShape || width != resizedWidth || height != resizedHeight) {
+                    it.shape.resize(width.toFloat(), height.toFloat())
+                    resizedShape = it.shape
+                    resizedWidth = width
+                    resizedHeight = height
+                }
+                it.draw(canvas)
+            }
+
+            if (visible) {
+                detectedPath.rewind()
+                detectedPath.moveTo(drawnCorners[0], drawnCorners[1])
+                detectedPath.lineTo(drawnCorners[2], drawnCorners[3])
+                detectedPath.lineTo(drawnCorners[4], drawnCorners[5])
+                detectedPath.lineTo(drawnCorners[6], drawnCorners[7])
+                detectedPath.close()
+
+                val saveCount = canvas.save()
+                canvas.scale(scaleX, scaleY)
+                canvas.drawPath(detectedPath, detectedPaint)
+                canvas.drawPath(detectedPath, detectedBorder)
+                canvas.restoreToCount(saveCount)
+            }
+        } finally {
+            unlockCanvasAndPost(canvas)
+        }
+
+        // keep rendering at display rate until the outline settles on its target
+        if (moving) {
+            frameScheduled = true
+            choreographer?.postFrameCallback(frameCallback)
+        }
+    }
+
+    /**
+     * Moves the detected document outline target, may be called from any thread
+     *
+     * @param points corners of the document in preview frame coordinates
+     * @param stdWidth width of the preview frame
+     * @param stdHeight height of the preview frame
+     * @return true when the outline moved enough to be worth redrawing
+     */
+    fun setDetectedQuad(points: Array<Point>, stdWidth: Double, stdHeight: Double): Boolean {
+        // ATTENTION: axis are swapped
+        val newPreviewWidth = stdHeight.toFloat()
+        val newPreviewHeight = stdWidth.toFloat()
+
+        synchronized(lock) {
+            var changed = !detectedVisible || newPreviewWidth != previewWidth || newPreviewHeight != previewHeight
+            for (i in 0 until 4) {
+                val x = newPreviewWidth - points[i].y.toFloat()
+                val y = points[i].x.toFloat()
+                if (Math.abs(x - targetCorners[i * 2]) > MOVE_THRESHOLD ||
+                        Math.abs(y - targetCorners[i * 2 + 1]) > MOVE_THRESHOLD) {
+                    changed = true
+                }
+            }
+            if (!changed) {
+                return false
+            }
+            for (i in 0 until 4) {
+                targetCorners[i * 2] = newPreviewWidth - points[i].y.toFloat()
+                targetCorners[i * 2 + 1] = points[i].x.toFloat()
+            }
+            previewWidth = newPreviewWidth
+            previewHeight = newPreviewHeight
+            detectedVisible = true
+            return true
+        }
     }
 
     fun setDocumentBoxShape(shape: Shape?, paint: Paint?, border: Paint?) {
         if (shape == null) {
             documentBoxShape = null;
+            requestRender()
             return;
         }
         documentBoxShape = HUDShape(shape, paint!!, border)
+        requestRender()
+    }
+
+    /**
+     * Hides the detected document outline
+     *
+     * @return true if it was visible and the view needs to be redrawn
+     */
+    fun clear(): Boolean {
+        synchronized(lock) {
+            val wasVisible = detectedVisible
+            detectedVisible = false
+            return wasVisible
+        }
     }
 
-    fun clear() {
-        detectedShape = null
+    companion object {
+        /** corner movement in preview pixels below which the outline target is not updated */
+        private const val MOVE_THRESHOLD = 2f
+
+        /** time constant of the glide towards the detected corners */
+        private const val SMOOTHING_NANOS = 60_000_000.0
+
+        /** distance in preview pixels at which a corner snaps to its target */
+        private const val SETTLE_DISTANCE = 0.5f
+
+        private const val FRAME_NANOS = 16_666_667L
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,29 @@
+plugins {
+    application
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_17
+    targetCompatibility = JavaVersion.VERSION_17
+}
+
+dependencies {
+    implementation(project(":scanner-core"))
+    // desktop OpenCV with the Linux, macOS and Windows natives, see scanner-core
+    implementation("org.openpnp:opencv:4.9.0-0")
+
+    val itextpdfVersion = "9.2.0"
+    implementation("com.itextpdf:kernel:$itextpdfVersion")
+    implementation("com.itextpdf:layout:$itextpdfVersion")
+    implementation("com.itextpdf:io:$itextpdfVersion")
+}
+
+application {
+    mainClass.set("com.todobom.opennotescanner.cli.BatchScanner")
+    applicationName = "opennotescanner"
+}
+
+// ./gradlew :scanner-cli:run --args="--input /path/to/photos --pdf"
+tasks.named<JavaExec>("run") {
+    workingDir = rootProject.projectDir
+}
@@ -0,0 +1,358 @@
+package com.todobom.opennotescanner.cli;
+
+import com.todobom.opennotescanner.processing.DetectionGeometry;
+import com.todobom.opennotescanner.processing.DocumentDetector;
+import com.todobom.opennotescanner.processing.DocumentEnhancer;
+import com.todobom.opennotescanner.processing.DocumentWarper;
+import com.todobom.opennotescanner.processing.FilterPreset;
+import com.todobom.opennotescanner.processing.PipelineMetrics;
+import com.todobom.opennotescanner.processing.PipelineMetrics.Stage;
+import com.todobom.opennotescanner.processing.Quadrilateral;
+import com.todobom.opennotescanner.processing.TileExecutor;
+
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfByte;
+import org.opencv.core.MatOfInt;
+import org.opencv.imgcodecs.Imgcodecs;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Scans a directory of document photos on a desktop or server, with the
+ * detection, perspective correction and enhancement of the app.
+ *
+ * Every photo is processed by a task of a fixed thread pool, the pages are
+ * written next to each other in the output directory and optionally merged
+ * into a PDF, one page per photo in file name order, like the gallery does.
+ * At the end of the run the throughput and the per stage times are printed.
+ *
+ * Usage: opennotescanner --input dir [--output dir] [--threads n] [--color]
+ * [--no-filter] [--preset name] [--binarization adaptive|background] [--aspect ratio] [--detection-height 500]
+ * [--format jpg|png] [--quality 95] [--pdf [file]]
+ */
+public class BatchScanner {
+
+    private static final List<String> EXTENSIONS = List.of(".jpg", ".jpeg", ".png");
+
+    private static class Options {
+        Path input;
+        Path output;
+        int threads = Runtime.getRuntime().availableProcessors();
+        boolean colorMode = false;
+        boolean filterMode = true;
+        double documentAspectRatio = 0;
+        int detectionHeight = DetectionGeometry.DEFAULT_DETECTION_HEIGHT;
+        FilterPreset preset;
+        DocumentEnhancer.Binarization binarization = DocumentEnhancer.Binarization.ADAPTIVE_MEAN;
+        String format = "jpg";
+        int quality = 95;
+        Path pdf;
+    }
+
+    private static class Page {
+        final Path photo;
+        final Path output;
+        final boolean detected;
+
+        Page(Path photo, Path output, boolean detected) {
+            this.photo = photo;
+            this.output = output;
+            this.detected = detected;
+        }
+    }
+
+    private final Options mOptions;
+    private final DocumentDetector mDetector = new DocumentDetector();
+    private final DocumentEnhancer mEnhancer;
+    private final PipelineMetrics mMetrics = PipelineMetrics.getInstance();
+
+    private BatchScanner(Options options) {
+        mOptions = options;
+        // photos already run side by side, bands of a single page would only compete with them
+        mEnhancer = options.threads > 1 ? new DocumentEnhancer(new TileExecutor(1)) : new DocumentEnhancer();
+        mEnhancer.setColorMode(options.colorMode);
+        mEnhancer.setFilterMode(options.filterMode);
+        mEnhancer.setPreset(options.preset);
+        mEnhancer.setBinarization(options.binarization);
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Options options;
+        try {
+            options = parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("usage: opennotescanner --input dir [--output dir] [--threads n] [--color] [--no-filter]"
+                    + " [--preset name] [--binarization adaptive|background] [--aspect ratio] [--detection-height 500]"
+                    + " [--format jpg|png] [--quality 95] [--pdf [file]]");
+            System.exit(2);
+            return;
+        }
+
+        nu.pattern.OpenCV.loadLocally();
+
+        if (!new BatchScanner(options).run()) {
+            System.exit(1);
+        }
+    }
+
+    private static Options parse(String[] args) {
+        Options options = new Options();
+        boolean pdf = false;
+
+        for (int i = 0; i < args.length; i++) {
+            String value = i + 1 < args.length ? args[i + 1] : null;
+            switch (args[i]) {
+                case "--input":
+                    options.input = Paths.get(required(args[i], value));
+                    i++;
+                    break;
+                case "--output":
+                    options.output = Paths.get(required(args[i], value));
+                    i++;
+                    break;
+                case "--threads":
+                    options.threads = Integer.parseInt(required(args[i], value));
+                    i++;
+                    break;
+                case "--color":
+                    options.colorMode = true;
+                    break;
+                case "--no-filter":
+                    options.filterMode = false;
+                    break;
+                case "--preset":
+                    options.preset = preset(required(args[i], value));
+                    i++;
+                    break;
+                case "--binarization":
+                    options.binarization = binarization(required(args[i], value));
+                    i++;
+                    break;
+                case "--aspect":
+                    options.documentAspectRatio = Double.parseDouble(required(args[i], value));
+                    i++;
+                    break;
+                case "--detection-height":
+                    options.detectionHeight = Integer.parseInt(required(args[i], value));
+                    i++;
+                    break;
+                case "--format":
+                    options.format = required(args[i], value);
+                    i++;
+                    break;
+                case "--quality":
+                    options.quality = Integer.parseInt(required(args[i], value));
+                    i++;
+                    break;
+                case "--pdf":
+                    pdf = true;
+                    if (value != null && !value.startsWith("--")) {
+                        options.pdf = Paths.get(value);
+                        i++;
+                    }
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown option " + args[i]);
+            }
+        }
+
+        if (options.input == null) {
+            throw new IllegalArgumentException("no input directory given");
+        }
+        if (!options.format.equals("jpg") && !options.format.equals("png")) {
+            throw new IllegalArgumentException("unsupported format " + options.format);
+        }
+        if (options.detectionHeight < 1) {
+            throw new IllegalArgumentException("the detection height must be positive");
+        }
+        if (options.threads < 1) {
+            throw new IllegalArgumentException("at least one thread is needed");
+        }
+        if (options.output == null) {
+            options.output = options.input.resolve("scanned");
+        }
+        if (pdf && options.pdf == null) {
+            options.pdf = options.output.resolve(options.input.toAbsolutePath().getFileName() + ".pdf");
+        }
+        return options;
+    }
+
+    /**
+     * a preset by its name in lower case and with dashes, like black-white-despeckled
+     */
+    private static FilterPreset preset(String value) {
+        try {
+            return FilterPreset.valueOf(value.toUpperCase(Locale.ROOT).replace('-', '_'));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("unknown preset " + value);
+        }
+    }
+
+    private static DocumentEnhancer.Binarization binarization(String value) {
+        switch (value) {
+            case "adaptive":
+                return DocumentEnhancer.Binarization.ADAPTIVE_MEAN;
+            case "background":
+                return DocumentEnhancer.Binarization.BACKGROUND;
+            default:
+                throw new IllegalArgumentException("unknown binarization " + value);
+        }
+    }
+
+    private static String required(String option, String value) {
+        if (value == null) {
+            throw new IllegalArgumentException(option + " needs a value");
+        }
+        return value;
+    }
+
+    /**
+     * @return false when some photo could not be processed
+     */
+    private boolean run() throws IOException, InterruptedException {
+        List<Path> photos;
+        try (Stream<Path> files = Files.list(mOptions.input)) {
+            photos = files.filter(BatchScanner::isPhoto).sorted().collect(Collectors.toList());
+        }
+        Files.createDirectories(mOptions.output);
+
+        System.out.println(String.format(Locale.US, "%d photos in %s, %d threads, %s%s",
+                photos.size(), mOptions.input, mOptions.threads,
+                mOptions.colorMode ? "color" : "b/w", mOptions.filterMode ? " filtered" : ""));
+
+        mMetrics.reset();
+        mMetrics.setEnabled(true);
+
+        long start = System.nanoTime();
+
+        ExecutorService executor = Executors.newFixedThreadPool(mOptions.threads);
+        List<Future<Page>> futures = new ArrayList<>(photos.size());
+        for (Path photo : photos) {
+            futures.add(executor.submit(() -> scan(photo)));
+        }
+        executor.shutdown();
+
+        List<Page> pages = new ArrayList<>(photos.size());
+        int failed = 0;
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                pages.add(futures.get(i).get());
+            } catch (ExecutionException e) {
+                failed++;
+                System.err.println(photos.get(i) + ": " + e.getCause().getMessage());
+            }
+        }
+
+        long scanned = System.nanoTime();
+
+        if (mOptions.pdf != null && !pages.isEmpty()) {
+            List<Path> outputs = pages.stream().map(page -> page.output).collect(Collectors.toList());
+            PdfAssembler.write(mOptions.pdf, outputs, mMetrics);
+            System.out.println("pdf written to " + mOptions.pdf);
+        }
+
+        long end = System.nanoTime();
+
+        long detected = pages.stream().filter(page -> page.detected).count();
+        double scanSeconds = (scanned - start) / 1e9;
+        System.out.println(String.format(Locale.US,
+                "%d pages, %d documents detected, %d failed in %.1f s: %.2f images/s, total with pdf %.1f s",
+                pages.size(), detected, failed, scanSeconds,
+                scanSeconds == 0 ? 0 : pages.size() / scanSeconds, (end - start) / 1e9));
+        System.out.print(mMetrics.summary());
+
+        return failed == 0;
+    }
+
+    private static boolean isPhoto(Path path) {
+        String name = path.getFileName().toString().toLowerCase(Locale.US);
+        return Files.isRegularFile(path) && EXTENSIONS.stream().anyMatch(name::endsWith);
+    }
+
+    /**
+     * Runs the capture path of the app, as ImageProcessor.detectDocument does, and writes the page
+     */
+    private Page scan(Path photo) throws IOException {
+        // imread applies the EXIF orientation, the pages come out the way the photos are viewed.
+        // B/W pages are read as gray, the warp then moves a third of the bytes.
+        int flags = mEnhancer.isColorNeeded() ? Imgcodecs.IMREAD_COLOR : Imgcodecs.IMREAD_GRAYSCALE;
+        long start = mMetrics.start();
+        Mat picture = Imgcodecs.imread(photo.toString(), flags);
+        mMetrics.stop(Stage.CAPTURE_DECODE, start);
+        if (picture.empty()) {
+            throw new IOException("not a readable picture");
+        }
+
+        Mat doc = null;
+        try {
+            DetectionGeometry geometry = new DetectionGeometry(picture.cols(), picture.rows(),
+                    mOptions.documentAspectRatio, false, mOptions.detectionHeight);
+
+            start = mMetrics.start();
+            Quadrilateral quad = mDetector.detect(picture, geometry);
+            mMetrics.stop(Stage.CAPTURE_DETECT, start);
+
+            if (quad != null) {
+                start = mMetrics.start();
+                doc = DocumentWarper.fourPointTransform(picture, quad.getPoints(), geometry.getRatio());
+                mMetrics.stop(Stage.CAPTURE_WARP, start);
+            } else {
+                doc = picture.clone();
+            }
+
+            start = mMetrics.start();
+            mEnhancer.enhance(doc);
+            mMetrics.stop(Stage.CAPTURE_ENHANCE, start);
+
+            Path output = mOptions.output.resolve(baseName(photo) + "." + mOptions.format);
+            write(doc, output);
+            return new Page(photo, output, quad != null);
+        } finally {
+            if (doc != null) {
+                doc.release();
+            }
+            picture.release();
+        }
+    }
+
+    private void write(Mat doc, Path output) throws IOException {
+        long start = mMetrics.start();
+        MatOfInt params = mOptions.format.equals("png")
+                ? new MatOfInt(Imgcodecs.IMWRITE_PNG_COMPRESSION, 6)
+                : new MatOfInt(Imgcodecs.IMWRITE_JPEG_QUALITY, mOptions.quality);
+        MatOfByte encoded = new MatOfByte();
+        try {
+            if (!Imgcodecs.imencode("." + mOptions.format, doc, encoded, params)) {
+                throw new IOException("could not encode " + output.getFileName());
+            }
+            byte[] bytes = encoded.toArray();
+            mMetrics.stop(Stage.CAPTURE_ENCODE, start);
+
+            start = mMetrics.start();
+            Files.write(output, bytes);
+            mMetrics.stop(Stage.CLI_WRITE, start);
+        } finally {
+            encoded.release();
+            params.release();
+        }
+    }
+
+    private static String baseName(Path photo) {
+        String name = photo.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return dot > 0 ? name.substring(0, dot) : name;
+    }
+}
@@ -0,0 +1,37 @@
+package com.todobom.opennotescanner.cli;
+
+import com.itextpdf.io.image.ImageDataFactory;
+import com.itextpdf.kernel.geom.PageSize;
+import com.itextpdf.kernel.pdf.PdfDocument;
+import com.itextpdf.kernel.pdf.PdfWriter;
+import com.itextpdf.layout.Document;
+import com.itextpdf.layout.element.Image;
+import com.todobom.opennotescanner.processing.PipelineMetrics;
+import com.todobom.opennotescanner.processing.PipelineMetrics.Stage;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Merges page images into a PDF the way PdfHelper does in the app, every image
+ * gets a page of its own size
+ */
+class PdfAssembler {
+
+    private PdfAssembler() {
+    }
+
+    static void write(Path pdf, List<Path> images, PipelineMetrics metrics) throws IOException {
+        try (Document document = new Document(new PdfDocument(new PdfWriter(pdf.toString())))) {
+            PdfDocument pdfDocument = document.getPdfDocument();
+            for (Path path : images) {
+                long start = metrics.start();
+                Image image = new Image(ImageDataFactory.create(path.toString()));
+                pdfDocument.addNewPage(new PageSize(image.getImageWidth(), image.getImageHeight()));
+                document.add(image);
+                metrics.stop(Stage.PDF_PAGE, start);
+            }
+        }
+    }
+}
@@ -0,0 +1,66 @@
+plugins {
+    `java-library`
+    // only published on the Gradle Plugin Portal, see pluginManagement in settings.gradle.kts
+    id("me.champeau.jmh") version "0.7.2"
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_17
+    targetCompatibility = JavaVersion.VERSION_17
+}
+
+// desktop build of the OpenCV Java bindings with the natives for Linux, macOS and Windows,
+// on Android the app brings its own OpenCV so the module only compiles against it
+val opencvDesktop = "org.openpnp:opencv:4.9.0-0"
+
+dependencies {
+    compileOnly(opencvDesktop)
+    api("com.google.zxing:core:3.5.3")
+
+    jmh(opencvDesktop)
+
+    testImplementation("junit:junit:4.13.2")
+    testImplementation(opencvDesktop)
+}
+
+jmh {
+    fork.set(1)
+    warmupIterations.set(3)
+    iterations.set(5)
+    resultFormat.set("JSON")
+    // a single benchmark class, ./gradlew :scanner-core:jmh -PjmhIncludes=FilterBenchmark
+    (project.findProperty("jmhIncludes") as String?)?.let { includes.set(listOf(it)) }
+}
+
+// detection rate, corner error and latency over an annotated corpus, see CorpusBenchmark
+// ./gradlew :scanner-core:corpusBenchmark -PcorpusArgs="--generate 200 --heights 240,360,500,720"
+tasks.register<JavaExec>("corpusBenchmark") {
+    group = "benchmark"
+    description = "Measures the document detection over an annotated picture corpus"
+    classpath = sourceSets["jmh"].runtimeClasspath
+    mainClass.set("com.todobom.opennotescanner.processing.benchmark.CorpusBenchmark")
+    workingDir = projectDir
+    args = (project.findProperty("corpusArgs") as String? ?: "--generate 100").split(" ").filter { it.isNotBlank() }
+}
+
+// sustained preview frame rate over a session recorded with the "Record Preview" setting
+// ./gradlew :scanner-core:replayBenchmark -PreplayArgs="--replay preview.nv21 --unlimited"
+tasks.register<JavaExec>("replayBenchmark") {
+    group = "benchmark"
+    description = "Replays a recorded preview session through the preview detection"
+    classpath = sourceSets["jmh"].runtimeClasspath
+    mainClass.set("com.todobom.opennotescanner.processing.benchmark.ReplayBenchmark")
+    workingDir = projectDir
+    args = (project.findProperty("replayArgs") as String? ?: "").split(" ").filter { it.isNotBlank() }
+}
+
+// ink precision/recall of each binarization over synthetic pages, see BinarizationQuality
+// ./gradlew :scanner-core:binarizationQuality -PbinarizationArgs="--pages 50"
+tasks.register<JavaExec>("binarizationQuality") {
+    group = "benchmark"
+    description = "Compares the output quality and speed of the binarizations"
+    classpath = sourceSets["jmh"].runtimeClasspath
+    mainClass.set("com.todobom.opennotescanner.processing.benchmark.BinarizationQuality")
+    workingDir = projectDir
+    args = (project.findProperty("binarizationArgs") as String? ?: "").split(" ").filter { it.isNotBlank() }
+}
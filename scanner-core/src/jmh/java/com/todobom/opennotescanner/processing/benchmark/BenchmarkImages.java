@@ -0,0 +1,92 @@
+package com.todobom.opennotescanner.processing.benchmark;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.Point;
+import org.opencv.core.Scalar;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Inputs of the benchmarks, drawn instead of loaded so runs are reproducible
+ * on any workstation
+ */
+public final class BenchmarkImages {
+
+    /**
+     * Frame sizes measured, the preview is the luminance plane of a typical
+     * preview frame and the capture a decoded 12 megapixel picture
+     */
+    public enum Resolution {
+        PREVIEW(1280, 720, CvType.CV_8UC1),
+        CAPTURE(4032, 3024, CvType.CV_8UC3);
+
+        public final int width;
+        public final int height;
+        public final int type;
+
+        Resolution(int width, int height, int type) {
+            this.width = width;
+            this.height = height;
+            this.type = type;
+        }
+    }
+
+    private static boolean sLoaded = false;
+
+    private BenchmarkImages() {
+    }
+
+    public static synchronized void loadOpenCV() {
+        if (!sLoaded) {
+            nu.pattern.OpenCV.loadLocally();
+            sLoaded = true;
+        }
+    }
+
+    /**
+     * Corners of the drawn document, sorted as top-left, top-right,
+     * bottom-right and bottom-left, in frame coordinates
+     */
+    public static Point[] documentCorners(int width, int height) {
+        return new Point[]{
+                new Point(width * 0.22, height * 0.08),
+                new Point(width * 0.80, height * 0.12),
+                new Point(width * 0.77, height * 0.93),
+                new Point(width * 0.19, height * 0.89)
+        };
+    }
+
+    /**
+     * A slightly rotated white page with lines of dark and coloured ink
+     * on a noisy gray table
+     */
+    public static Mat document(int width, int height, int type) {
+        Mat image = new Mat(height, width, type, gray(type, 90));
+
+        Mat noise = new Mat(height, width, type);
+        Core.randn(noise, 0, 12);
+        Core.add(image, noise, image);
+        noise.release();
+
+        Point[] corners = documentCorners(width, height);
+        MatOfPoint page = new MatOfPoint(corners);
+        Imgproc.fillConvexPoly(image, page, gray(type, 235));
+        page.release();
+
+        int thickness = Math.max(1, height / 400);
+        double left = corners[0].x + width * 0.05;
+        double right = corners[1].x - width * 0.05;
+        for (double y = corners[1].y + height * 0.05; y < corners[3].y - height * 0.05; y += height * 0.03) {
+            Scalar ink = ((int) y / 7) % 5 == 0 ? new Scalar(200, 40, 30, 255) : gray(type, 30);
+            Imgproc.line(image, new Point(left, y), new Point(right - (y % 97), y), ink, thickness);
+        }
+
+        return image;
+    }
+
+    private static Scalar gray(int type, double value) {
+        return CvType.channels(type) == 1 ? new Scalar(value) : new Scalar(value, value, value, 255);
+    }
+}
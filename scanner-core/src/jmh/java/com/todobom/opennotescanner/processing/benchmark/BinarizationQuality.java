@@ -0,0 +1,207 @@
+package com.todobom.opennotescanner.processing.benchmark;
+
+import com.todobom.opennotescanner.processing.DocumentEnhancer;
+import com.todobom.opennotescanner.processing.DocumentEnhancer.Binarization;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Output quality and speed of each binarization of the B/W filter.
+ *
+ * Pages are drawn as a clean ink mask, the ground truth, then printed on paper
+ * with uneven lighting, a soft shadow, defocus and sensor noise. Each binarization
+ * runs on the degraded page and its result is compared with the mask: precision,
+ * recall and F-measure of the ink pixels, and the share of wrong pixels.
+ *
+ * Usage: BinarizationQuality [--pages 20] [--size 2480x3508] [--seed 42]
+ */
+public class BinarizationQuality {
+
+    private static class Score {
+        long truePositives;
+        long falsePositives;
+        long falseNegatives;
+        long pixels;
+        double[] millis;
+
+        double precision() {
+            return truePositives == 0 ? 0 : (double) truePositives / (truePositives + falsePositives);
+        }
+
+        double recall() {
+            return truePositives == 0 ? 0 : (double) truePositives / (truePositives + falseNegatives);
+        }
+
+        double fMeasure() {
+            double p = precision();
+            double r = recall();
+            return p + r == 0 ? 0 : 2 * p * r / (p + r);
+        }
+    }
+
+    public static void main(String[] args) {
+        int pages = 20;
+        int width = 2480;
+        int height = 3508;
+        long seed = 42;
+
+        for (int i = 0; i < args.length; i++) {
+            String value = i + 1 < args.length ? args[i + 1] : "";
+            switch (args[i]) {
+                case "--pages":
+                    pages = Integer.parseInt(value);
+                    break;
+                case "--size":
+                    String[] size = value.split("x");
+                    width = Integer.parseInt(size[0]);
+                    height = Integer.parseInt(size[1]);
+                    break;
+                case "--seed":
+                    seed = Long.parseLong(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown option " + args[i]);
+            }
+            i++;
+        }
+
+        BenchmarkImages.loadOpenCV();
+
+        Binarization[] binarizations = Binarization.values();
+        Score[] scores = new Score[binarizations.length];
+        for (int b = 0; b < binarizations.length; b++) {
+            scores[b] = new Score();
+            scores[b].millis = new double[pages];
+        }
+
+        Random random = new Random(seed);
+        DocumentEnhancer enhancer = new DocumentEnhancer();
+        Mat result = new Mat();
+
+        for (int page = 0; page < pages; page++) {
+            Mat ink = inkMask(width, height, random);
+            Mat picture = print(ink, random);
+
+            for (int b = 0; b < binarizations.length; b++) {
+                enhancer.setBinarization(binarizations[b]);
+                picture.copyTo(result);
+
+                long start = System.nanoTime();
+                enhancer.binarize(result);
+                scores[b].millis[page] = (System.nanoTime() - start) / 1e6;
+
+                compare(ink, result, scores[b]);
+            }
+
+            ink.release();
+            picture.release();
+        }
+        result.release();
+
+        System.out.println(String.format(Locale.US, "%d pages of %dx%d", pages, width, height));
+        System.out.println("binarization    precision  recall  f-measure  wrong px   ms.p50   ms.max");
+        for (int b = 0; b < binarizations.length; b++) {
+            Score score = scores[b];
+            double[] millis = score.millis.clone();
+            Arrays.sort(millis);
+            long wrong = score.falsePositives + score.falseNegatives;
+            System.out.println(String.format(Locale.US, "%-14s  %8.2f%%  %5.2f%%  %8.2f%%  %7.3f%%  %7.1f  %7.1f",
+                    binarizations[b],
+                    100 * score.precision(), 100 * score.recall(), 100 * score.fMeasure(),
+                    100.0 * wrong / score.pixels,
+                    millis[millis.length / 2], millis[millis.length - 1]));
+        }
+    }
+
+    /**
+     * Text like strokes and a few thin rules, 255 where the page has ink
+     */
+    private static Mat inkMask(int width, int height, Random random) {
+        Mat ink = new Mat(height, width, CvType.CV_8UC1, Scalar.all(0));
+        int lineHeight = height / 50;
+        int stroke = Math.max(2, height / 1200);
+        int margin = width / 12;
+
+        for (int y = margin; y < height - margin; y += lineHeight) {
+            if (random.nextInt(7) == 0) {
+                Imgproc.line(ink, new Point(margin, y), new Point(width - margin, y), Scalar.all(255), Math.max(1, stroke / 2));
+                continue;
+            }
+            int x = margin;
+            int end = margin + random.nextInt(width - 2 * margin);
+            while (x < end) {
+                int letter = lineHeight / 3 + random.nextInt(lineHeight / 3);
+                Imgproc.rectangle(ink, new Point(x, y), new Point(x + letter / 2, y + letter), Scalar.all(255), stroke);
+                x += letter / 2 + stroke * 3 + (random.nextInt(5) == 0 ? letter : 0);
+            }
+        }
+        return ink;
+    }
+
+    /**
+     * The page as a camera sees it, paper and ink under uneven light
+     */
+    private static Mat print(Mat ink, Random random) {
+        Size size = ink.size();
+        double paper = 200 + random.nextInt(40);
+        double inkLevel = 30 + random.nextInt(40);
+
+        Mat page = new Mat(size, CvType.CV_32FC1, new Scalar(paper));
+        page.setTo(new Scalar(inkLevel), ink);
+
+        // light falling from a corner, and the shadow of the phone
+        Mat light = new Mat(2, 2, CvType.CV_32FC1);
+        light.put(0, 0, 1.0, 0.6 + random.nextDouble() * 0.3, 0.7 + random.nextDouble() * 0.3, 0.45 + random.nextDouble() * 0.3);
+        Mat lighting = new Mat();
+        Imgproc.resize(light, lighting, size, 0, 0, Imgproc.INTER_LINEAR);
+        Point shadow = new Point(size.width * random.nextDouble(), size.height * random.nextDouble());
+        Mat shadowMask = new Mat(size, CvType.CV_32FC1, new Scalar(1));
+        Imgproc.circle(shadowMask, shadow, (int) (size.width / 4), new Scalar(0.65), -1);
+        Imgproc.GaussianBlur(shadowMask, shadowMask, new Size(0, 0), size.width / 20);
+        Core.multiply(lighting, shadowMask, lighting);
+        Core.multiply(page, lighting, page);
+
+        Imgproc.GaussianBlur(page, page, new Size(0, 0), 0.8 + random.nextDouble());
+
+        Mat noise = new Mat(size, CvType.CV_32FC1);
+        Core.randn(noise, 0, 3 + random.nextInt(5));
+        Core.add(page, noise, page);
+
+        Mat picture = new Mat();
+        page.convertTo(picture, CvType.CV_8UC1);
+
+        page.release();
+        light.release();
+        lighting.release();
+        shadowMask.release();
+        noise.release();
+        return picture;
+    }
+
+    private static void compare(Mat ink, Mat binary, Score score) {
+        Mat found = new Mat();
+        Mat hits = new Mat();
+        // binarized documents have black ink on white paper
+        Core.compare(binary, Scalar.all(128), found, Core.CMP_LT);
+
+        Core.bitwise_and(found, ink, hits);
+        long truePositives = Core.countNonZero(hits);
+        score.truePositives += truePositives;
+        score.falsePositives += Core.countNonZero(found) - truePositives;
+        score.falseNegatives += Core.countNonZero(ink) - truePositives;
+        score.pixels += ink.total();
+
+        found.release();
+        hits.release();
+    }
+}
@@ -0,0 +1,58 @@
+package com.todobom.opennotescanner.processing.benchmark;
+
+import com.todobom.opennotescanner.processing.DocumentWarper;
+import com.todobom.opennotescanner.processing.benchmark.BenchmarkImages.Resolution;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Warping of a captured picture once the document is found, in colour and, as
+ * for B/W scans, in gray, see {@link EnhanceBenchmark} for the enhancement that follows
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class CaptureBenchmark {
+
+    @Param({"PREVIEW", "CAPTURE"})
+    public Resolution resolution;
+
+    @Param({"3", "1"})
+    public int channels;
+
+    private Mat picture;
+    private Point[] corners;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        BenchmarkImages.loadOpenCV();
+        picture = BenchmarkImages.document(resolution.width, resolution.height, CvType.CV_8UC(channels));
+        corners = BenchmarkImages.documentCorners(resolution.width, resolution.height);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        picture.release();
+    }
+
+    @Benchmark
+    public Mat fourPointTransform() {
+        Mat doc = DocumentWarper.fourPointTransform(picture, corners, 1);
+        doc.release();
+        return doc;
+    }
+}
@@ -0,0 +1,85 @@
+package com.todobom.opennotescanner.processing.benchmark;
+
+import org.opencv.core.Point;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Ground truth of a corpus directory, stored next to the images as {@value #FILE_NAME}.
+ *
+ * One line per image: the file name followed by the eight coordinates of the
+ * document corners in image pixels, ordered top-left, top-right, bottom-right
+ * and bottom-left, all separated by commas. A line with only the file name marks
+ * an image without a document, where nothing should be detected. Empty lines and
+ * lines starting with # are ignored.
+ */
+public final class CorpusAnnotations {
+
+    public static final String FILE_NAME = "annotations.csv";
+
+    public static final class Entry {
+        public final String file;
+        /** null when the image holds no document */
+        public final Point[] corners;
+
+        public Entry(String file, Point[] corners) {
+            this.file = file;
+            this.corners = corners;
+        }
+    }
+
+    private CorpusAnnotations() {
+    }
+
+    public static List<Entry> read(Path corpus) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(corpus.resolve(FILE_NAME), StandardCharsets.UTF_8)) {
+            String line;
+            int number = 0;
+            while ((line = reader.readLine()) != null) {
+                number++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] fields = line.split(",");
+                if (fields.length == 1) {
+                    entries.add(new Entry(fields[0].trim(), null));
+                } else if (fields.length == 9) {
+                    Point[] corners = new Point[4];
+                    for (int i = 0; i < 4; i++) {
+                        corners[i] = new Point(Double.parseDouble(fields[1 + i * 2].trim()),
+                                Double.parseDouble(fields[2 + i * 2].trim()));
+                    }
+                    entries.add(new Entry(fields[0].trim(), corners));
+                } else {
+                    throw new IOException(FILE_NAME + ":" + number + ": expected a file name and 0 or 8 coordinates");
+                }
+            }
+        }
+        return entries;
+    }
+
+    public static void write(Path corpus, List<Entry> entries) throws IOException {
+        try (Writer writer = Files.newBufferedWriter(corpus.resolve(FILE_NAME), StandardCharsets.UTF_8)) {
+            writer.write("# file,tl.x,tl.y,tr.x,tr.y,br.x,br.y,bl.x,bl.y\n");
+            for (Entry entry : entries) {
+                writer.write(entry.file);
+                if (entry.corners != null) {
+                    for (Point corner : entry.corners) {
+                        writer.write(String.format(Locale.US, ",%.1f,%.1f", corner.x, corner.y));
+                    }
+                }
+                writer.write('\n');
+            }
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package com.todobom.opennotescanner.processing.benchmark;
+
+import com.todobom.opennotescanner.processing.DetectionGeometry;
+import com.todobom.opennotescanner.processing.DocumentDetector;
+import com.todobom.opennotescanner.processing.Quadrilateral;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.imgcodecs.Imgcodecs;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Accuracy and latency of the document detection over an annotated corpus.
+ *
+ * Every picture of the corpus goes through the capture detection path
+ * ({@link DocumentDetector#detect}) once per detection height. For each height it
+ * reports the share of documents found, the share of empty pictures where
+ * something was found anyway, the corner error in picture pixels and the
+ * p50/p95 detection time. A detection counts as correct when no corner is
+ * further than {@value #MAX_CORNER_ERROR} of the picture diagonal from the truth.
+ *
+ * With --aspect the page format is set as in the app, a document then has to
+ * reach the hot area around the page of that aspect ratio (height / width).
+ *
+ * Usage: CorpusBenchmark [--corpus dir] [--generate count] [--heights 240,360,500]
+ * [--aspect ratio] [--canny 75,200] [--epsilon 0.02] [--rounds 3]
+ */
+public class CorpusBenchmark {
+
+    private static final double MAX_CORNER_ERROR = 0.02;
+
+    private static class Sample {
+        final String file;
+        final Mat picture;
+        final Point[] corners;
+
+        Sample(String file, Mat picture, Point[] corners) {
+            this.file = file;
+            this.picture = picture;
+            this.corners = corners;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        Path corpus = Paths.get("build/corpus");
+        int generate = 0;
+        int[] heights = {240, 360, 500, 720};
+        double aspect = 0;
+        double cannyLow = DocumentDetector.DEFAULT_CANNY_LOW;
+        double cannyHigh = DocumentDetector.DEFAULT_CANNY_HIGH;
+        double epsilon = DocumentDetector.DEFAULT_APPROX_EPSILON;
+        int rounds = 3;
+
+        for (int i = 0; i < args.length; i++) {
+            String value = i + 1 < args.length ? args[i + 1] : "";
+            switch (args[i]) {
+                case "--corpus":
+                    corpus = Paths.get(value);
+                    break;
+                case "--generate":
+                    generate = Integer.parseInt(value);
+                    break;
+                case "--heights":
+                    heights = Arrays.stream(value.split(",")).mapToInt(h -> Integer.parseInt(h.trim())).toArray();
+                    break;
+                case "--aspect":
+                    aspect = Double.parseDouble(value);
+                    break;
+                case "--canny":
+                    String[] thresholds = value.split(",");
+                    cannyLow = Double.parseDouble(thresholds[0]);
+                    cannyHigh = Double.parseDouble(thresholds[1]);
+                    break;
+                case "--epsilon":
+                    epsilon = Double.parseDouble(value);
+                    break;
+                case "--rounds":
+                    rounds = Integer.parseInt(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown option " + args[i]);
+            }
+            i++;
+        }
+
+        BenchmarkImages.loadOpenCV();
+
+        if (generate > 0) {
+            System.out.println("generating " + generate + " synthetic pictures in " + corpus);
+            SyntheticCorpus.generate(corpus, generate, 4032, 3024, 42);
+        } else if (!Files.exists(corpus.resolve(CorpusAnnotations.FILE_NAME))) {
+            throw new IOException("no " + CorpusAnnotations.FILE_NAME + " in " + corpus + ", use --generate to create a synthetic corpus");
+        }
+
+        List<Sample> samples = load(corpus);
+        System.out.println(String.format(Locale.US, "%d pictures, aspect %.3f, canny %.0f/%.0f, epsilon %.3f, %d rounds",
+                samples.size(), aspect, cannyLow, cannyHigh, epsilon, rounds));
+        System.out.println("height  detected  false+  wrong  err.mean  err.p95   ms.p50   ms.p95");
+
+        DocumentDetector detector = new DocumentDetector(cannyLow, cannyHigh, epsilon);
+        for (int height : heights) {
+            run(detector, samples, height, aspect, rounds);
+        }
+
+        for (Sample sample : samples) {
+            sample.picture.release();
+        }
+    }
+
+    private static List<Sample> load(Path corpus) throws IOException {
+        List<Sample> samples = new ArrayList<>();
+        for (CorpusAnnotations.Entry entry : CorpusAnnotations.read(corpus)) {
+            Mat picture = Imgcodecs.imread(corpus.resolve(entry.file).toString());
+            if (picture.empty()) {
+                throw new IOException("could not read " + entry.file);
+            }
+            samples.add(new Sample(entry.file, picture, entry.corners));
+        }
+        return samples;
+    }
+
+    private static void run(DocumentDetector detector, List<Sample> samples, int height, double aspect, int rounds) {
+        int documents = 0;
+        int detected = 0;
+        int wrong = 0;
+        int empty = 0;
+        int falsePositives = 0;
+        List<Double> errors = new ArrayList<>();
+        double[] millis = new double[samples.size() * rounds];
+        int timed = 0;
+
+        // the first pass warms the JIT and the workspace up
+        for (Sample sample : samples) {
+            detector.detect(sample.picture, geometry(sample.picture, height, aspect));
+        }
+
+        for (int round = 0; round < rounds; round++) {
+            for (Sample sample : samples) {
+                DetectionGeometry geometry = geometry(sample.picture, height, aspect);
+
+                long start = System.nanoTime();
+                Quadrilateral quad = detector.detect(sample.picture, geometry);
+                millis[timed++] = (System.nanoTime() - start) / 1e6;
+
+                if (round > 0) {
+                    continue;
+                }
+
+                if (sample.corners == null) {
+                    empty++;
+                    if (quad != null) {
+                        falsePositives++;
+                    }
+                    continue;
+                }
+
+                documents++;
+                if (quad == null) {
+                    continue;
+                }
+                double error = cornerError(quad.getPoints(), geometry.getRatio(), sample.corners);
+                double diagonal = Math.hypot(sample.picture.cols(), sample.picture.rows());
+                if (error <= diagonal * MAX_CORNER_ERROR) {
+                    detected++;
+                    errors.add(error);
+                } else {
+                    wrong++;
+                }
+            }
+        }
+
+        Arrays.sort(millis);
+        double[] sortedErrors = errors.stream().mapToDouble(Double::doubleValue).sorted().toArray();
+
+        System.out.println(String.format(Locale.US, "%6d  %7.1f%%  %5.1f%%  %5d  %8.1f  %7.1f  %7.2f  %7.2f",
+                height,
+                documents == 0 ? 0 : 100.0 * detected / documents,
+                empty == 0 ? 0 : 100.0 * falsePositives / empty,
+                wrong,
+                Arrays.stream(sortedErrors).average().orElse(0),
+                percentile(sortedErrors, 0.95),
+                percentile(millis, 0.5),
+                percentile(millis, 0.95)));
+    }
+
+    private static DetectionGeometry geometry(Mat picture, int height, double aspect) {
+        return new DetectionGeometry(picture.cols(), picture.rows(), aspect, false, height);
+    }
+
+    /**
+     * @return the largest distance between a detected corner and the annotated one, in picture pixels
+     */
+    private static double cornerError(Point[] found, double ratio, Point[] truth) {
+        double max = 0;
+        for (int i = 0; i < 4; i++) {
+            max = Math.max(max, Math.hypot(found[i].x * ratio - truth[i].x, found[i].y * ratio - truth[i].y));
+        }
+        return max;
+    }
+
+    private static double percentile(double[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(sorted.length * percentile) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+}
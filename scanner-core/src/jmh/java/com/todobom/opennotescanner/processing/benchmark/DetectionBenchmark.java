@@ -0,0 +1,93 @@
+package com.todobom.opennotescanner.processing.benchmark;
+
+import com.todobom.opennotescanner.processing.DetectionGeometry;
+import com.todobom.opennotescanner.processing.DocumentDetector;
+import com.todobom.opennotescanner.processing.Quadrilateral;
+import com.todobom.opennotescanner.processing.benchmark.BenchmarkImages.Resolution;
+
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stages of the document detection, run on preview frames and on captured pictures
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class DetectionBenchmark {
+
+    @Param({"PREVIEW", "CAPTURE"})
+    public Resolution resolution;
+
+    private DocumentDetector detector;
+    private DetectionGeometry geometry;
+    private Mat frame;
+    private Mat gray;
+    private List<MatOfPoint> contours;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        BenchmarkImages.loadOpenCV();
+        detector = new DocumentDetector();
+        geometry = new DetectionGeometry(resolution.width, resolution.height, 0, false);
+        frame = BenchmarkImages.document(resolution.width, resolution.height, resolution.type);
+
+        gray = detector.toDetectionGray(frame, geometry).clone();
+        contours = detector.findContours(gray, false);
+        if (detector.getQuadrilateral(contours, geometry) == null) {
+            throw new IllegalStateException("benchmark document not detected");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        frame.release();
+        gray.release();
+        for (MatOfPoint contour : contours) {
+            contour.release();
+        }
+    }
+
+    @Benchmark
+    public Mat toDetectionGray() {
+        return detector.toDetectionGray(frame, geometry);
+    }
+
+    @Benchmark
+    public List<MatOfPoint> findContours() {
+        List<MatOfPoint> found = detector.findContours(gray, false);
+        for (MatOfPoint contour : found) {
+            contour.release();
+        }
+        return found;
+    }
+
+    @Benchmark
+    public Quadrilateral getQuadrilateral() {
+        return detector.getQuadrilateral(contours, geometry);
+    }
+
+    @Benchmark
+    public Quadrilateral detect() {
+        Mat detectionGray = detector.toDetectionGray(frame, geometry);
+        List<MatOfPoint> found = detector.findContours(detectionGray, false);
+        Quadrilateral quad = detector.getQuadrilateral(found, geometry);
+        for (MatOfPoint contour : found) {
+            contour.release();
+        }
+        return quad;
+    }
+}
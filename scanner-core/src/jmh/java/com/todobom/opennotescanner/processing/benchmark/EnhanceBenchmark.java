@@ -0,0 +1,93 @@
+package com.todobom.opennotescanner.processing.benchmark;
+
+import com.todobom.opennotescanner.processing.DocumentEnhancer;
+import com.todobom.opennotescanner.processing.DocumentWarper;
+import com.todobom.opennotescanner.processing.benchmark.BenchmarkImages.Resolution;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.imgproc.Imgproc;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Enhancement of a straightened document in each colour and filter mode, with
+ * each binarization, see {@link BinarizationQuality} for their output quality
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class EnhanceBenchmark {
+
+    public enum Enhancement {
+        BW(false, false),
+        BW_FILTER(false, true),
+        COLOR_FILTER(true, true);
+
+        final boolean colorMode;
+        final boolean filterMode;
+
+        Enhancement(boolean colorMode, boolean filterMode) {
+            this.colorMode = colorMode;
+            this.filterMode = filterMode;
+        }
+    }
+
+    @Param({"PREVIEW", "CAPTURE"})
+    public Resolution resolution;
+
+    @Param({"BW", "BW_FILTER", "COLOR_FILTER"})
+    public Enhancement enhancement;
+
+    @Param({"ADAPTIVE_MEAN", "BACKGROUND"})
+    public DocumentEnhancer.Binarization binarization;
+
+    private Mat warped;
+    private Mat document;
+    private final DocumentEnhancer enhancer = new DocumentEnhancer();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        BenchmarkImages.loadOpenCV();
+        enhancer.setColorMode(enhancement.colorMode);
+        enhancer.setFilterMode(enhancement.filterMode);
+        enhancer.setBinarization(binarization);
+        Mat picture = BenchmarkImages.document(resolution.width, resolution.height, CvType.CV_8UC3);
+        if (!enhancer.isColorNeeded()) {
+            // B/W pictures are warped as gray, as in the app
+            Imgproc.cvtColor(picture, picture, Imgproc.COLOR_RGB2GRAY);
+        }
+        warped = DocumentWarper.fourPointTransform(picture,
+                BenchmarkImages.documentCorners(resolution.width, resolution.height), 1);
+        picture.release();
+        document = new Mat();
+    }
+
+    @Setup(Level.Invocation)
+    public void resetDocument() {
+        // enhancing works in place
+        warped.copyTo(document);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        warped.release();
+        document.release();
+    }
+
+    @Benchmark
+    public Mat enhanceDocument() {
+        enhancer.enhance(document);
+        return document;
+    }
+}
@@ -0,0 +1,107 @@
+package com.todobom.opennotescanner.processing.benchmark;
+
+import com.todobom.opennotescanner.processing.BinarizeFilter;
+import com.todobom.opennotescanner.processing.ColorBoostFilter;
+import com.todobom.opennotescanner.processing.ContrastFilter;
+import com.todobom.opennotescanner.processing.DespeckleFilter;
+import com.todobom.opennotescanner.processing.DocumentEnhancer.Binarization;
+import com.todobom.opennotescanner.processing.DocumentFilter;
+import com.todobom.opennotescanner.processing.DocumentFilterChain;
+import com.todobom.opennotescanner.processing.DocumentWarper;
+import com.todobom.opennotescanner.processing.GrayscaleFilter;
+import com.todobom.opennotescanner.processing.ScratchPool;
+import com.todobom.opennotescanner.processing.SharpenFilter;
+import com.todobom.opennotescanner.processing.TileExecutor;
+import com.todobom.opennotescanner.processing.benchmark.BenchmarkImages.Resolution;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.imgproc.Imgproc;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Each {@link DocumentFilter} on its own, run by a chain of that single filter on
+ * a straightened document in the format the filter takes, see {@link EnhanceBenchmark}
+ * for the presets as a whole
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class FilterBenchmark {
+
+    public enum Stage {
+        GRAYSCALE(GrayscaleFilter::new),
+        CONTRAST(() -> new ContrastFilter(1.5, 0)),
+        BINARIZE(() -> new BinarizeFilter(Binarization.ADAPTIVE_MEAN)),
+        BINARIZE_BACKGROUND(() -> new BinarizeFilter(Binarization.BACKGROUND)),
+        COLOR_BOOST(() -> new ColorBoostFilter(Binarization.ADAPTIVE_MEAN)),
+        COLOR_BOOST_BACKGROUND(() -> new ColorBoostFilter(Binarization.BACKGROUND)),
+        SHARPEN(SharpenFilter::new),
+        DESPECKLE(DespeckleFilter::new);
+
+        final Supplier<DocumentFilter> filter;
+
+        Stage(Supplier<DocumentFilter> filter) {
+            this.filter = filter;
+        }
+    }
+
+    @Param({"PREVIEW", "CAPTURE"})
+    public Resolution resolution;
+
+    @Param({"GRAYSCALE", "CONTRAST", "BINARIZE", "BINARIZE_BACKGROUND", "COLOR_BOOST",
+            "COLOR_BOOST_BACKGROUND", "SHARPEN", "DESPECKLE"})
+    public Stage stage;
+
+    private Mat input;
+    private Mat document;
+    private DocumentFilterChain chain;
+    private final ScratchPool scratch = new ScratchPool();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        BenchmarkImages.loadOpenCV();
+        DocumentFilter filter = stage.filter.get();
+        chain = DocumentFilterChain.of(new DocumentFilter.Context(TileExecutor.getInstance(), scratch), filter);
+
+        Mat picture = BenchmarkImages.document(resolution.width, resolution.height, CvType.CV_8UC3);
+        input = DocumentWarper.fourPointTransform(picture,
+                BenchmarkImages.documentCorners(resolution.width, resolution.height), 1);
+        picture.release();
+        if (filter.getInputFormat() == DocumentFilter.Format.GRAY) {
+            Imgproc.cvtColor(input, input, Imgproc.COLOR_RGBA2GRAY);
+        }
+        document = new Mat();
+    }
+
+    @Setup(Level.Invocation)
+    public void resetDocument() {
+        // filtering works in place
+        input.copyTo(document);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        input.release();
+        document.release();
+        scratch.clear();
+    }
+
+    @Benchmark
+    public Mat filter() {
+        chain.apply(document);
+        return document;
+    }
+}
@@ -0,0 +1,267 @@
+package com.todobom.opennotescanner.processing.benchmark;
+
+import com.todobom.opennotescanner.processing.DetectionGeometry;
+import com.todobom.opennotescanner.processing.DocumentDetector;
+import com.todobom.opennotescanner.processing.FrameMailbox;
+import com.todobom.opennotescanner.processing.FrameSource;
+import com.todobom.opennotescanner.processing.PreviewAnalyzer;
+import com.todobom.opennotescanner.processing.ReplayFrameSource;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Sustained preview throughput over a session recorded on a device with the
+ * "Record Preview" setting.
+ *
+ * The frames go through the {@link PreviewAnalyzer} the app runs on the preview:
+ * the replay thread posts them to a latest-wins mailbox and a worker thread
+ * analyzes them, so in real time the frames the worker can not keep up with are
+ * dropped like on the phone. At unlimited speed the replay waits for the worker,
+ * which gives the highest sustainable rate.
+ *
+ * The options follow the settings of the app: --aspect is the page format (height
+ * over width, 0 for any), --detection-height a fixed detection height and
+ * --calibrate the calibration of the "Automatic detection height" setting,
+ * --auto decodes the QR codes on their own thread like the automatic mode and
+ * --tracking follows the document between full searches.
+ *
+ * Usage: ReplayBenchmark --replay file.nv21 [--unlimited] [--aspect 1.4142]
+ * [--detection-height 500 | --calibrate] [--auto] [--tracking]
+ */
+public class ReplayBenchmark {
+
+    private static class Frame {
+        final byte[] data;
+        final int width;
+        final int height;
+
+        Frame(byte[] data, int width, int height) {
+            this.data = data;
+            this.width = width;
+            this.height = height;
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        File file = null;
+        boolean realTime = true;
+        boolean tracking = false;
+        boolean auto = false;
+        boolean calibrate = false;
+        double aspect = 0;
+        int detectionHeight = DetectionGeometry.DEFAULT_DETECTION_HEIGHT;
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--replay":
+                    file = new File(i + 1 < args.length ? args[++i] : "");
+                    break;
+                case "--unlimited":
+                    realTime = false;
+                    break;
+                case "--tracking":
+                    tracking = true;
+                    break;
+                case "--auto":
+                    auto = true;
+                    break;
+                case "--calibrate":
+                    calibrate = true;
+                    break;
+                case "--aspect":
+                    aspect = Double.parseDouble(i + 1 < args.length ? args[++i] : "");
+                    break;
+                case "--detection-height":
+                    detectionHeight = Integer.parseInt(i + 1 < args.length ? args[++i] : "");
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown option " + args[i]);
+            }
+        }
+        if (file == null) {
+            throw new IllegalArgumentException("no recording given, use --replay file.nv21");
+        }
+
+        BenchmarkImages.loadOpenCV();
+
+        // at unlimited speed a single buffer makes the replay wait for the worker to give it back
+        ReplayFrameSource source = realTime ? new ReplayFrameSource(file, true) : new ReplayFrameSource(file, false, 1);
+        int width = source.getWidth();
+        int height = source.getHeight();
+        System.out.println(String.format(Locale.US, "%s %dx%d, %s, aspect %s, detection height %s, tracking %s, QR codes %s",
+                file, width, height, realTime ? "real time" : "unlimited speed",
+                aspect == 0 ? "any" : String.valueOf(aspect),
+                calibrate ? "calibrated" : String.valueOf(detectionHeight),
+                tracking ? "on" : "off", auto ? "on" : "off"));
+
+        // decodes on its own thread like the analysis executor of the app
+        ExecutorService qrExecutor = auto ? Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "Replay QR Worker");
+            thread.setDaemon(true);
+            return thread;
+        }) : null;
+
+        PreviewAnalyzer analyzer = new PreviewAnalyzer(new DocumentDetector(), qrExecutor);
+        analyzer.setDocumentAspectRatio(aspect);
+        analyzer.setQuadTracking(tracking);
+        analyzer.setDetectionHeight(detectionHeight);
+        MemoryHeightStore heights = calibrate ? new MemoryHeightStore() : null;
+        analyzer.setDetectionHeightStore(heights);
+
+        FrameMailbox<Frame> mailbox = new FrameMailbox<>();
+        Semaphore posted = new Semaphore(0);
+        Worker worker = new Worker(source, mailbox, posted, width, height, analyzer, auto);
+        worker.start();
+
+        source.start((FrameSource src, byte[] data, int w, int h) -> {
+            Frame stale = mailbox.post(new Frame(data, w, h));
+            if (stale != null) {
+                src.recycle(stale.data);
+            }
+            posted.release();
+        });
+        try {
+            source.await();
+        } finally {
+            // the worker thread would keep the JVM alive after a failed replay
+            worker.finish();
+            worker.join();
+            if (qrExecutor != null) {
+                qrExecutor.shutdown();
+            }
+        }
+
+        double[] millis = Arrays.copyOf(worker.millis, worker.processed);
+        Arrays.sort(millis);
+        double seconds = worker.elapsedNanos / 1e9;
+
+        System.out.println(String.format(Locale.US, "replayed %d frames, %d dropped by the source, %d by the mailbox",
+                source.getDeliveredFrames(), source.getDroppedFrames(), mailbox.getDroppedCount()));
+        System.out.println(String.format(Locale.US, "processed %d frames in %.1f s: %.1f fps, detected %.1f%%, ms p50 %.2f p95 %.2f max %.2f",
+                worker.processed, seconds,
+                seconds == 0 ? 0 : worker.processed / seconds,
+                worker.processed == 0 ? 0 : 100.0 * worker.detected / worker.processed,
+                percentile(millis, 0.5), percentile(millis, 0.95),
+                millis.length == 0 ? 0 : millis[millis.length - 1]));
+        if (heights != null) {
+            System.out.println("calibrated detection height " + (analyzer.isCalibrating() ? "not reached" : analyzer.getDetectionHeight()));
+        }
+        if (auto) {
+            System.out.println(String.format(Locale.US, "QR codes decoded on %d frames, found on %d",
+                    analyzer.getQRDecodeCount(), worker.qrFrames));
+        }
+    }
+
+    /**
+     * Keeps the calibrated heights of the replay, a replay always calibrates from scratch
+     */
+    private static class MemoryHeightStore implements PreviewAnalyzer.DetectionHeightStore {
+        private final Map<String, Integer> mHeights = new HashMap<>();
+
+        @Override
+        public int load(int width, int height) {
+            Integer stored = mHeights.get(width + "x" + height);
+            return stored != null ? stored : 0;
+        }
+
+        @Override
+        public void store(int width, int height, int detectionHeight) {
+            mHeights.put(width + "x" + height, detectionHeight);
+        }
+    }
+
+    private static class Worker extends Thread {
+        private final FrameSource mSource;
+        private final FrameMailbox<Frame> mMailbox;
+        private final Semaphore mPosted;
+        private final PreviewAnalyzer mAnalyzer;
+        private final boolean mAuto;
+        private final Mat mFrame;
+        private volatile boolean mFinished = false;
+
+        double[] millis = new double[1024];
+        int processed = 0;
+        int detected = 0;
+        int qrFrames = 0;
+        long elapsedNanos = 0;
+
+        Worker(FrameSource source, FrameMailbox<Frame> mailbox, Semaphore posted, int width, int height,
+               PreviewAnalyzer analyzer, boolean auto) {
+            super("Replay Worker");
+            mSource = source;
+            mMailbox = mailbox;
+            mPosted = posted;
+            mAnalyzer = analyzer;
+            mAuto = auto;
+            mFrame = new Mat(height, width, CvType.CV_8UC1);
+        }
+
+        void finish() {
+            mFinished = true;
+            mPosted.release();
+        }
+
+        @Override
+        public void run() {
+            long start = -1;
+            try {
+                while (true) {
+                    mPosted.acquire();
+                    Frame frame = mMailbox.take();
+                    if (frame == null) {
+                        if (mFinished) {
+                            break;
+                        }
+                        continue;
+                    }
+                    if (start < 0) {
+                        start = System.nanoTime();
+                    }
+                    long frameStart = System.nanoTime();
+                    if (process(frame)) {
+                        detected++;
+                    }
+                    mSource.recycle(frame.data);
+                    if (processed == millis.length) {
+                        millis = Arrays.copyOf(millis, processed * 2);
+                    }
+                    millis[processed++] = (System.nanoTime() - frameStart) / 1e6;
+                }
+            } catch (InterruptedException e) {
+                // stopped
+            }
+            elapsedNanos = start < 0 ? 0 : System.nanoTime() - start;
+            mFrame.release();
+            mAnalyzer.release();
+        }
+
+        private boolean process(Frame frame) {
+            // the luminance plane leads the NV21 frame, as in PreviewBufferPool.copyLuminance
+            mFrame.put(0, 0, frame.data, 0, frame.width * frame.height);
+            PreviewAnalyzer.Analysis analysis = mAnalyzer.analyze(mFrame, frame.data, mAuto);
+            if (analysis.getQRCodes().length > 0) {
+                qrFrames++;
+            }
+            return analysis.isDocumentDetected();
+        }
+    }
+
+    private static double percentile(double[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(sorted.length * percentile) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+}
@@ -0,0 +1,181 @@
+package com.todobom.opennotescanner.processing.benchmark;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfInt;
+import org.opencv.core.MatOfPoint2f;
+import org.opencv.core.Point;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+import org.opencv.imgcodecs.Imgcodecs;
+import org.opencv.imgproc.Imgproc;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Generates a corpus of pictures of pages with known corners, for when no
+ * annotated photos are at hand.
+ *
+ * Each page is drawn flat, with lines of text like ink, and projected on a
+ * textured table with a random perspective, rotation and distance. Uneven
+ * lighting, defocus, sensor noise and JPEG compression follow. About one
+ * picture in ten holds no page at all, to account for false detections.
+ */
+public final class SyntheticCorpus {
+
+    private static final int PAGE_WIDTH = 850;
+    private static final int PAGE_HEIGHT = 1100;
+
+    private SyntheticCorpus() {
+    }
+
+    public static void generate(Path corpus, int count, int width, int height, long seed) throws IOException {
+        Files.createDirectories(corpus);
+        Random random = new Random(seed);
+        List<CorpusAnnotations.Entry> entries = new ArrayList<>(count);
+        MatOfInt jpegQuality = new MatOfInt(Imgcodecs.IMWRITE_JPEG_QUALITY, 90);
+
+        for (int i = 0; i < count; i++) {
+            String file = String.format(Locale.US, "synthetic-%04d.jpg", i);
+            Mat picture = background(width, height, random);
+
+            Point[] corners = null;
+            if (random.nextInt(10) != 0) {
+                corners = placePage(width, height, random);
+                drawPage(picture, corners, random);
+            }
+
+            degrade(picture, random);
+            Imgcodecs.imwrite(corpus.resolve(file).toString(), picture, jpegQuality);
+            picture.release();
+
+            entries.add(new CorpusAnnotations.Entry(file, corners));
+        }
+
+        jpegQuality.release();
+        CorpusAnnotations.write(corpus, entries);
+    }
+
+    private static Mat background(int width, int height, Random random) {
+        double base = 60 + random.nextInt(80);
+        Mat picture = new Mat(height, width, CvType.CV_8UC3,
+                new Scalar(base * (0.8 + random.nextDouble() * 0.4), base, base * (0.8 + random.nextDouble() * 0.4)));
+
+        // signed blotches, like the grain of a table, with soft edges of their own
+        Mat streaks = new Mat(height / 8, width / 8, CvType.CV_16SC3);
+        Core.randn(streaks, 0, 25);
+        Imgproc.resize(streaks, streaks, new Size(width, height), 0, 0, Imgproc.INTER_CUBIC);
+        Core.add(picture, streaks, picture, new Mat(), CvType.CV_8UC3);
+        streaks.release();
+
+        return picture;
+    }
+
+    /**
+     * Corners of a page held roughly in front of the camera in portrait, the
+     * frame is landscape so the page is rotated a quarter turn
+     */
+    private static Point[] placePage(int width, int height, Random random) {
+        double scale = 0.70 + random.nextDouble() * 0.25;
+        double pageHeight = height * scale;
+        double pageWidth = pageHeight * PAGE_HEIGHT / PAGE_WIDTH;
+        if (pageWidth > width * 0.95) {
+            pageWidth = width * 0.95;
+            pageHeight = pageWidth * PAGE_WIDTH / PAGE_HEIGHT;
+        }
+
+        double cx = width / 2.0 + (random.nextDouble() - 0.5) * (width - pageWidth) * 0.5;
+        double cy = height / 2.0 + (random.nextDouble() - 0.5) * (height - pageHeight) * 0.5;
+        double angle = Math.toRadians((random.nextDouble() - 0.5) * 16);
+        double jitter = pageHeight * 0.04;
+
+        double[][] offsets = {
+                {-pageWidth / 2, -pageHeight / 2},
+                {pageWidth / 2, -pageHeight / 2},
+                {pageWidth / 2, pageHeight / 2},
+                {-pageWidth / 2, pageHeight / 2}
+        };
+
+        Point[] corners = new Point[4];
+        for (int i = 0; i < 4; i++) {
+            double x = offsets[i][0] + (random.nextDouble() - 0.5) * jitter;
+            double y = offsets[i][1] + (random.nextDouble() - 0.5) * jitter;
+            corners[i] = new Point(
+                    cx + x * Math.cos(angle) - y * Math.sin(angle),
+                    cy + x * Math.sin(angle) + y * Math.cos(angle));
+        }
+        return corners;
+    }
+
+    private static void drawPage(Mat picture, Point[] corners, Random random) {
+        double paper = 215 + random.nextInt(35);
+        Mat page = new Mat(PAGE_WIDTH, PAGE_HEIGHT, CvType.CV_8UC3, new Scalar(paper, paper, paper));
+
+        // lines of "text" along the long side, the page lies rotated in the landscape frame
+        for (int x = 80; x < PAGE_HEIGHT - 80; x += 28) {
+            if (random.nextInt(6) == 0) {
+                continue;
+            }
+            int length = 200 + random.nextInt(PAGE_WIDTH - 300);
+            Scalar ink = random.nextInt(8) == 0 ? new Scalar(40, 40, 190) : new Scalar(35, 35, 35);
+            for (int y = 70; y < 70 + length; y += 14 + random.nextInt(20)) {
+                Imgproc.line(page, new Point(x, y), new Point(x + 10 + random.nextInt(6), y), ink, 3);
+            }
+        }
+
+        MatOfPoint2f flat = new MatOfPoint2f(
+                new Point(0, 0), new Point(PAGE_HEIGHT, 0),
+                new Point(PAGE_HEIGHT, PAGE_WIDTH), new Point(0, PAGE_WIDTH));
+        MatOfPoint2f projected = new MatOfPoint2f(corners);
+        Mat transform = Imgproc.getPerspectiveTransform(flat, projected);
+
+        Mat mask = new Mat(page.size(), CvType.CV_8UC1, new Scalar(255));
+        Mat warpedPage = new Mat();
+        Mat warpedMask = new Mat();
+        Imgproc.warpPerspective(page, warpedPage, transform, picture.size());
+        Imgproc.warpPerspective(mask, warpedMask, transform, picture.size());
+        warpedPage.copyTo(picture, warpedMask);
+
+        page.release();
+        mask.release();
+        warpedPage.release();
+        warpedMask.release();
+        flat.release();
+        projected.release();
+        transform.release();
+    }
+
+    private static void degrade(Mat picture, Random random) {
+        // light falling from one side
+        Mat light = new Mat(1, 2, CvType.CV_32FC1);
+        light.put(0, 0, 0.7 + random.nextDouble() * 0.3, 1.0);
+        Mat gradient = new Mat();
+        Imgproc.resize(light, gradient, picture.size(), 0, 0, Imgproc.INTER_LINEAR);
+        Mat gradient3 = new Mat();
+        Imgproc.cvtColor(gradient, gradient3, Imgproc.COLOR_GRAY2BGR);
+        picture.convertTo(picture, CvType.CV_32FC3);
+        Core.multiply(picture, gradient3, picture);
+        picture.convertTo(picture, CvType.CV_8UC3);
+        light.release();
+        gradient.release();
+        gradient3.release();
+
+        int blur = 1 + 2 * random.nextInt(3);
+        if (blur > 1) {
+            Imgproc.GaussianBlur(picture, picture, new Size(blur, blur), 0);
+        }
+
+        // signed, so the noise darkens as much as it brightens
+        Mat noise = new Mat(picture.size(), CvType.CV_16SC3);
+        Core.randn(noise, 0, 4 + random.nextInt(8));
+        Core.add(picture, noise, picture, new Mat(), CvType.CV_8UC3);
+        noise.release();
+    }
+}
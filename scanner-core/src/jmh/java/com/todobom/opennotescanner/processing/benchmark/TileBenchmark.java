@@ -0,0 +1,78 @@
+package com.todobom.opennotescanner.processing.benchmark;
+
+import com.todobom.opennotescanner.processing.DocumentEnhancer;
+import com.todobom.opennotescanner.processing.DocumentWarper;
+import com.todobom.opennotescanner.processing.TileExecutor;
+import com.todobom.opennotescanner.processing.benchmark.BenchmarkImages.Resolution;
+import com.todobom.opennotescanner.processing.benchmark.EnhanceBenchmark.Enhancement;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.imgproc.Imgproc;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scaling of the full resolution enhancement with the number of bands run
+ * side by side, on a straightened 12 megapixel capture
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class TileBenchmark {
+
+    @Param({"1", "2", "4", "8"})
+    public int threads;
+
+    @Param({"BW_FILTER", "COLOR_FILTER"})
+    public Enhancement enhancement;
+
+    private Mat warped;
+    private Mat document;
+    private DocumentEnhancer enhancer;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        BenchmarkImages.loadOpenCV();
+        Resolution resolution = Resolution.CAPTURE;
+        enhancer = new DocumentEnhancer(new TileExecutor(threads));
+        enhancer.setColorMode(enhancement.colorMode);
+        enhancer.setFilterMode(enhancement.filterMode);
+        Mat picture = BenchmarkImages.document(resolution.width, resolution.height, CvType.CV_8UC3);
+        if (!enhancer.isColorNeeded()) {
+            // B/W pictures are warped as gray, as in the app
+            Imgproc.cvtColor(picture, picture, Imgproc.COLOR_RGB2GRAY);
+        }
+        warped = DocumentWarper.fourPointTransform(picture,
+                BenchmarkImages.documentCorners(resolution.width, resolution.height), 1);
+        picture.release();
+        document = new Mat();
+    }
+
+    @Setup(Level.Invocation)
+    public void resetDocument() {
+        warped.copyTo(document);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        warped.release();
+        document.release();
+    }
+
+    @Benchmark
+    public Mat enhanceDocument() {
+        enhancer.enhance(document);
+        return document;
+    }
+}
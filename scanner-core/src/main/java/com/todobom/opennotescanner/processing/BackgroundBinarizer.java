@@ -0,0 +1,132 @@
+package com.todobom.opennotescanner.processing;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Binarizes a document against an estimate of its paper background.
+ *
+ * The background is estimated on a copy reduced {@value #BACKGROUND_SCALE} times
+ * per side, where a dilation wider than the strokes removes the ink, and scaled
+ * back up. Dividing the document by it turns the paper white whatever the
+ * lighting, so a simple threshold separates the ink: either a global Otsu
+ * threshold or a Sauvola one from the local statistics, both computed on the
+ * reduced copy too. Only the upscaling, the division and the comparison run at
+ * full resolution, unlike the 225 pixels wide mean of the adaptive threshold.
+ */
+public class BackgroundBinarizer {
+
+    public enum Threshold {
+        GLOBAL,
+        SAUVOLA
+    }
+
+    private static final int BACKGROUND_SCALE = 8;
+    // in reduced pixels, about 56 pixels of the document, wider than any stroke
+    private static final int BACKGROUND_KERNEL = 7;
+    private static final int SAUVOLA_WINDOW = 15;
+    private static final double SAUVOLA_K = 0.2;
+    private static final double SAUVOLA_R = 128;
+
+    private final Threshold mThreshold;
+
+    public BackgroundBinarizer() {
+        this(Threshold.SAUVOLA);
+    }
+
+    public BackgroundBinarizer(Threshold threshold) {
+        mThreshold = threshold;
+    }
+
+    /**
+     * Binarizes a single channel image in place, the paper turns white and the ink black
+     */
+    public void binarize(Mat gray) {
+        MatTracker mats = MatTracker.getInstance();
+        Mat threshold = mats.track(new Mat(), "binarize.threshold");
+        normalize(gray, threshold);
+        Core.compare(gray, threshold, gray, Core.CMP_GT);
+        mats.release(threshold);
+    }
+
+    /**
+     * Divides a single channel image in place by its paper background and writes the
+     * threshold of every pixel to threshold, a pixel at or below it is ink
+     */
+    public void normalize(Mat gray, Mat threshold) {
+        MatTracker mats = MatTracker.getInstance();
+        Size size = gray.size();
+        Size reducedSize = new Size(Math.max(1, gray.cols() / BACKGROUND_SCALE),
+                Math.max(1, gray.rows() / BACKGROUND_SCALE));
+
+        Mat reduced = mats.track(new Mat(), "binarize.reduced");
+        Imgproc.resize(gray, reduced, reducedSize, 0, 0, Imgproc.INTER_AREA);
+
+        Mat background = mats.track(new Mat(), "binarize.background");
+        Mat kernel = Imgproc.getStructuringElement(Imgproc.MORPH_RECT, new Size(BACKGROUND_KERNEL, BACKGROUND_KERNEL));
+        Imgproc.dilate(reduced, background, kernel);
+        kernel.release();
+        Imgproc.blur(background, background, new Size(BACKGROUND_KERNEL, BACKGROUND_KERNEL));
+
+        // the reduced copy is normalized too, the threshold is computed on it
+        Core.divide(reduced, background, reduced, 255);
+
+        Mat upscaled = mats.track(new Mat(), "binarize.upscaled");
+        Imgproc.resize(background, upscaled, size, 0, 0, Imgproc.INTER_LINEAR);
+        Core.divide(gray, upscaled, gray, 255);
+        mats.release(upscaled);
+        mats.release(background);
+
+        if (mThreshold == Threshold.GLOBAL) {
+            Mat binary = mats.track(new Mat(), "binarize.otsu");
+            double otsu = Imgproc.threshold(reduced, binary, 0, 255, Imgproc.THRESH_BINARY | Imgproc.THRESH_OTSU);
+            mats.release(binary);
+            threshold.create(size, CvType.CV_8UC1);
+            threshold.setTo(new Scalar(otsu));
+        } else {
+            Mat reducedThreshold = mats.track(new Mat(), "binarize.sauvola");
+            sauvola(reduced, reducedThreshold);
+            Imgproc.resize(reducedThreshold, threshold, size, 0, 0, Imgproc.INTER_LINEAR);
+            mats.release(reducedThreshold);
+        }
+
+        mats.release(reduced);
+    }
+
+    /**
+     * T = m * (1 + k * (s / R - 1)), with the mean m and the standard deviation s of the window
+     */
+    private static void sauvola(Mat src, Mat dst) {
+        MatTracker mats = MatTracker.getInstance();
+        Size window = new Size(SAUVOLA_WINDOW, SAUVOLA_WINDOW);
+        Point anchor = new Point(-1, -1);
+
+        Mat values = mats.track(new Mat(), "binarize.values");
+        src.convertTo(values, CvType.CV_32F);
+
+        Mat mean = mats.track(new Mat(), "binarize.mean");
+        Imgproc.blur(values, mean, window, anchor, Core.BORDER_REPLICATE);
+
+        Mat deviation = mats.track(new Mat(), "binarize.deviation");
+        Core.multiply(values, values, values);
+        Imgproc.blur(values, deviation, window, anchor, Core.BORDER_REPLICATE);
+        Core.multiply(mean, mean, values);
+        Core.subtract(deviation, values, deviation);
+        Imgproc.threshold(deviation, deviation, 0, 0, Imgproc.THRESH_TOZERO);
+        Core.sqrt(deviation, deviation);
+
+        // m * (1 - k) + m * s * k / R
+        Core.multiply(mean, deviation, deviation, SAUVOLA_K / SAUVOLA_R);
+        Core.addWeighted(mean, 1 - SAUVOLA_K, deviation, 1, 0, values);
+        values.convertTo(dst, CvType.CV_8U);
+
+        mats.release(deviation);
+        mats.release(mean);
+        mats.release(values);
+    }
+}
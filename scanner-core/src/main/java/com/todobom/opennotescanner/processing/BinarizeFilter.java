@@ -0,0 +1,63 @@
+package com.todobom.opennotescanner.processing;
+
+import com.todobom.opennotescanner.processing.DocumentEnhancer.Binarization;
+
+import org.opencv.core.Mat;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Binarizes a gray document, paper white and ink black, with the given {@link Binarization}
+ */
+public class BinarizeFilter implements DocumentFilter {
+
+    // neighbourhood and offset of the local mean telling ink from paper
+    static final int INK_BLOCK_SIZE = 225;
+    static final int INK_OFFSET = 15;
+
+    private final Binarization binarization;
+    private final BackgroundBinarizer backgroundBinarizer = new BackgroundBinarizer();
+
+    public BinarizeFilter(Binarization binarization) {
+        this.binarization = binarization;
+    }
+
+    @Override
+    public String getName() {
+        return binarization == Binarization.BACKGROUND ? "binarize.background" : "binarize";
+    }
+
+    @Override
+    public Format getInputFormat() {
+        return Format.GRAY;
+    }
+
+    @Override
+    public Format getOutputFormat(Format input) {
+        return Format.GRAY;
+    }
+
+    @Override
+    public int getRadius() {
+        return radius(binarization);
+    }
+
+    /**
+     * Rows a binarization reads above and below a pixel: the local mean reaches half
+     * a block, the background is estimated on the whole page
+     */
+    static int radius(Binarization binarization) {
+        return binarization == Binarization.BACKGROUND ? WHOLE_PAGE : INK_BLOCK_SIZE / 2;
+    }
+
+    @Override
+    public void apply(Mat src, Mat dst, Context context) {
+        if (binarization == Binarization.BACKGROUND) {
+            if (src != dst) {
+                src.copyTo(dst);
+            }
+            backgroundBinarizer.binarize(dst);
+        } else {
+            Imgproc.adaptiveThreshold(src, dst, 255, Imgproc.ADAPTIVE_THRESH_MEAN_C, Imgproc.THRESH_BINARY, INK_BLOCK_SIZE, INK_OFFSET);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.todobom.opennotescanner.processing;
+
+import com.todobom.opennotescanner.processing.DocumentEnhancer.Binarization;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Raises the contrast of a colour document, whitens its background and saturates
+ * the ink colours, the per pixel part in a single pass, see {@link ColorEnhanceKernel}.
+ * The ink is told from the paper with the given {@link Binarization}.
+ */
+public class ColorBoostFilter implements DocumentFilter {
+
+    private static final double DEFAULT_GAIN = 1.5;     // contrast
+    private static final double DEFAULT_BIAS = 0;       // bright
+    private static final int DEFAULT_THRESHOLD = 110;   // threshold
+
+    private final Binarization binarization;
+    private final double gain;
+    private final double bias;
+    private final int threshold;
+    private final BackgroundBinarizer backgroundBinarizer = new BackgroundBinarizer();
+
+    public ColorBoostFilter(Binarization binarization) {
+        this(binarization, DEFAULT_GAIN, DEFAULT_BIAS, DEFAULT_THRESHOLD);
+    }
+
+    /**
+     * @param gain contrast applied before telling the ink from the paper
+     * @param bias brightness added with it
+     * @param threshold channel value above which the ink colour is saturated
+     */
+    public ColorBoostFilter(Binarization binarization, double gain, double bias, int threshold) {
+        this.binarization = binarization;
+        this.gain = gain;
+        this.bias = bias;
+        this.threshold = threshold;
+    }
+
+    /**
+     * This filter with a contrast change applied before its own
+     */
+    ColorBoostFilter afterContrast(double contrastGain, double contrastBias) {
+        return new ColorBoostFilter(binarization, gain * contrastGain, gain * contrastBias + bias, threshold);
+    }
+
+    @Override
+    public String getName() {
+        return binarization == Binarization.BACKGROUND ? "colorBoost.background" : "colorBoost";
+    }
+
+    @Override
+    public Format getInputFormat() {
+        return Format.COLOR;
+    }
+
+    @Override
+    public Format getOutputFormat(Format input) {
+        return Format.COLOR;
+    }
+
+    @Override
+    public int getRadius() {
+        // the ink mask is thresholded like the binarization
+        return BinarizeFilter.radius(binarization);
+    }
+
+    @Override
+    public void apply(Mat src, Mat dst, Context context) {
+        ScratchPool scratch = context.getScratch();
+
+        src.convertTo(dst, -1, gain, bias);
+
+        Mat gray = scratch.acquireLike(dst, CvType.CV_8UC1);
+        Imgproc.cvtColor(dst, gray, dst.channels() == 4 ? Imgproc.COLOR_RGBA2GRAY : Imgproc.COLOR_RGB2GRAY);
+
+        if (binarization == Binarization.BACKGROUND) {
+            // the background is estimated on the whole page, only the per pixel part runs in bands
+            Mat inkThreshold = scratch.acquireLike(dst, CvType.CV_8UC1);
+            backgroundBinarizer.normalize(gray, inkThreshold);
+            context.getTiles().forEachBand(dst.rows(), (rowStart, rowEnd) ->
+                    ColorEnhanceKernel.applyRows(dst, gray, inkThreshold, 0, threshold, rowStart, rowEnd));
+            scratch.release(inkThreshold);
+        } else {
+            // the local mean adaptiveThreshold compares against, the mask itself is built by the kernel
+            int blockSize = BinarizeFilter.INK_BLOCK_SIZE;
+            Mat mean = scratch.acquireLike(dst, CvType.CV_8UC1);
+            Imgproc.blur(gray, mean, new Size(blockSize, blockSize), new Point(-1, -1), Core.BORDER_REPLICATE);
+            ColorEnhanceKernel.apply(dst, gray, mean, BinarizeFilter.INK_OFFSET, threshold);
+            scratch.release(mean);
+        }
+
+        scratch.release(gray);
+    }
+}
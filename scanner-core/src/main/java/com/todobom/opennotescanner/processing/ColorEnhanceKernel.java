@@ -0,0 +1,93 @@
+package com.todobom.opennotescanner.processing;
+
+import org.opencv.core.Mat;
+
+/**
+ * Per pixel part of the colour enhancement, fused in one pass: the ink mask of
+ * the adaptive threshold, whitening of the background and the colour threshold.
+ *
+ * The arithmetic is integer only and the division by the brightest channel comes
+ * from a 64 KB table. Rows are copied one at a time between the Mat and row
+ * buffers, the image is never held as a whole on the Java heap, so bands of
+ * rows can be processed side by side, see {@link TileExecutor#forEachBand}.
+ */
+final class ColorEnhanceKernel {
+
+    // SCALE[max << 8 | c] = c * 255 / max, for every c <= max
+    private static final byte[] SCALE = new byte[256 * 256];
+
+    static {
+        for (int max = 1; max < 256; max++) {
+            for (int c = 0; c <= max; c++) {
+                SCALE[max << 8 | c] = (byte) (c * 255 / max);
+            }
+        }
+    }
+
+    private ColorEnhanceKernel() {
+    }
+
+    /**
+     * Enhances src in place, a 3 or 4 channel image with 8 bits per channel, the
+     * alpha channel is left untouched.
+     *
+     * A pixel is ink when its gray value is at least inkOffset below the local mean,
+     * any other pixel turns white. Ink pixels with a channel above the threshold and
+     * an average below 80% of the brightest channel are brought to the max possible
+     * keeping the relation between the channels, other ink goes to black. Ink with an
+     * absolute first channel keeps its value.
+     *
+     * @param gray single channel gray version of src
+     * @param mean single channel local mean of gray
+     */
+    static void apply(Mat src, Mat gray, Mat mean, int inkOffset, int threshold) {
+        applyRows(src, gray, mean, inkOffset, threshold, 0, src.rows());
+    }
+
+    /**
+     * Same as {@link #apply} on the rows from rowStart to rowEnd, excluded
+     */
+    static void applyRows(Mat src, Mat gray, Mat mean, int inkOffset, int threshold,
+                                  int rowStart, int rowEnd) {
+        int cols = src.cols();
+        int channels = src.channels();
+        byte[] pixels = new byte[cols * channels];
+        byte[] grayRow = new byte[cols];
+        byte[] meanRow = new byte[cols];
+        // the colour test, mean < max * 0.8, in integers
+        int maxWeight = 12;
+        int sumWeight = 5;
+
+        for (int row = rowStart; row < rowEnd; row++) {
+            src.get(row, 0, pixels);
+            gray.get(row, 0, grayRow);
+            mean.get(row, 0, meanRow);
+
+            for (int x = 0, i = 0; x < cols; x++, i += channels) {
+                if ((grayRow[x] & 0xff) - (meanRow[x] & 0xff) > -inkOffset) {
+                    pixels[i] = pixels[i + 1] = pixels[i + 2] = (byte) 255;
+                    continue;
+                }
+
+                int c0 = pixels[i] & 0xff;
+                if (c0 == 255) {
+                    continue;
+                }
+                int c1 = pixels[i + 1] & 0xff;
+                int c2 = pixels[i + 2] & 0xff;
+                int max = Math.max(c0, Math.max(c1, c2));
+
+                if (max > threshold && (c0 + c1 + c2) * sumWeight < max * maxWeight) {
+                    int base = max << 8;
+                    pixels[i] = SCALE[base | c0];
+                    pixels[i + 1] = SCALE[base | c1];
+                    pixels[i + 2] = SCALE[base | c2];
+                } else {
+                    pixels[i] = pixels[i + 1] = pixels[i + 2] = 0;
+                }
+            }
+
+            src.put(row, 0, pixels);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.todobom.opennotescanner.processing;
+
+import org.opencv.core.MatOfPoint;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.List;
+
+/**
+ * Picks the contours worth approximating as a document quad.
+ *
+ * The area of every contour is computed once, contours smaller than the
+ * smallest acceptable document are dropped and only the biggest ones are
+ * kept, in descending area order. Selection works on primitive arrays
+ * reused between frames, so its cost only depends on the number of
+ * contours and not on sorting them.
+ */
+public class ContourCandidates {
+
+    public static final int DEFAULT_MAX_CANDIDATES = 10;
+
+    private final int mMaxCandidates;
+    private final int[] mIndexes;
+    private final double[] mAreas;
+    private int mCount;
+
+    public ContourCandidates() {
+        this(DEFAULT_MAX_CANDIDATES);
+    }
+
+    public ContourCandidates(int maxCandidates) {
+        mMaxCandidates = maxCandidates;
+        mIndexes = new int[maxCandidates];
+        mAreas = new double[maxCandidates];
+    }
+
+    /**
+     * Selects the biggest contours with at least minArea
+     *
+     * @return number of selected candidates
+     */
+    public int select(List<MatOfPoint> contours, double minArea) {
+        mCount = 0;
+
+        for (int i = 0; i < contours.size(); i++) {
+            double area = Imgproc.contourArea(contours.get(i));
+
+            if (area < minArea || (mCount == mMaxCandidates && area <= mAreas[mCount - 1])) {
+                continue;
+            }
+
+            // insert keeping descending order, the smallest falls off when full
+            int pos = mCount < mMaxCandidates ? mCount++ : mCount - 1;
+            while (pos > 0 && mAreas[pos - 1] < area) {
+                mAreas[pos] = mAreas[pos - 1];
+                mIndexes[pos] = mIndexes[pos - 1];
+                pos--;
+            }
+            mAreas[pos] = area;
+            mIndexes[pos] = i;
+        }
+
+        return mCount;
+    }
+
+    public int size() {
+        return mCount;
+    }
+
+    /**
+     * @return index in the contour list of the n-th biggest candidate
+     */
+    public int getIndex(int n) {
+        return mIndexes[n];
+    }
+
+    public double getArea(int n) {
+        return mAreas[n];
+    }
+}
@@ -0,0 +1,66 @@
+package com.todobom.opennotescanner.processing;
+
+import org.opencv.core.Mat;
+
+/**
+ * Scales every channel by a gain and adds a bias, saturating at 0 and 255
+ */
+public class ContrastFilter implements DocumentFilter {
+
+    private final double gain;
+    private final double bias;
+
+    public ContrastFilter(double gain, double bias) {
+        this.gain = gain;
+        this.bias = bias;
+    }
+
+    public double getGain() {
+        return gain;
+    }
+
+    public double getBias() {
+        return bias;
+    }
+
+    @Override
+    public String getName() {
+        return "contrast";
+    }
+
+    @Override
+    public Format getInputFormat() {
+        return Format.ANY;
+    }
+
+    @Override
+    public Format getOutputFormat(Format input) {
+        return input;
+    }
+
+    @Override
+    public int getRadius() {
+        return 0;
+    }
+
+    @Override
+    public void apply(Mat src, Mat dst, Context context) {
+        src.convertTo(dst, -1, gain, bias);
+    }
+
+    /**
+     * Two linear maps in a row are a single one, the result only differs where the
+     * first one saturates and the second one darkens
+     */
+    @Override
+    public DocumentFilter fuse(DocumentFilter next) {
+        if (next instanceof ContrastFilter) {
+            ContrastFilter contrast = (ContrastFilter) next;
+            return new ContrastFilter(gain * contrast.gain, bias * contrast.gain + contrast.bias);
+        }
+        if (next instanceof ColorBoostFilter) {
+            return ((ColorBoostFilter) next).afterContrast(gain, bias);
+        }
+        return null;
+    }
+}
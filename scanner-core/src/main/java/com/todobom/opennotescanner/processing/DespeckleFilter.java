@@ -0,0 +1,38 @@
+package com.todobom.opennotescanner.processing;
+
+import org.opencv.core.Mat;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Removes isolated dots, such as the noise a binarization leaves on the paper,
+ * with a 3x3 median
+ */
+public class DespeckleFilter implements DocumentFilter {
+
+    private static final int MEDIAN_SIZE = 3;
+
+    @Override
+    public String getName() {
+        return "despeckle";
+    }
+
+    @Override
+    public Format getInputFormat() {
+        return Format.ANY;
+    }
+
+    @Override
+    public Format getOutputFormat(Format input) {
+        return input;
+    }
+
+    @Override
+    public int getRadius() {
+        return MEDIAN_SIZE / 2;
+    }
+
+    @Override
+    public void apply(Mat src, Mat dst, Context context) {
+        Imgproc.medianBlur(src, dst, MEDIAN_SIZE);
+    }
+}
@@ -0,0 +1,125 @@
+package com.todobom.opennotescanner.processing;
+
+import java.util.Arrays;
+
+/**
+ * Picks the largest detection height a device can afford within a frame budget.
+ *
+ * The detection runs on the first preview frames at growing heights, starting
+ * from the smallest candidate. After a few samples at a height its latency is
+ * compared to the budget: if it fits, the height is kept and the next one is
+ * tried, otherwise the calibration ends with the last height that fitted.
+ * The detection cost grows with the square of the height, so budget phones
+ * settle on a low one after a couple of steps while fast ones go up to the
+ * frame height.
+ *
+ * Samples of another height than {@link #getHeight()} are ignored, frames may
+ * still be in flight when the calibration moves on.
+ */
+public class DetectionCalibration {
+
+    /**
+     * Version of the calibration procedure, stored along the chosen heights. It is
+     * bumped when the candidates, the budget or the procedure change, so heights
+     * picked by an older version are calibrated again.
+     */
+    public static final int VERSION = 1;
+
+    public static final int[] DEFAULT_HEIGHTS = {240, 300, 360, 420, 500, 600, 720};
+    public static final double DEFAULT_FRAME_BUDGET_MILLIS = 30;
+
+    // the first detections pay for the JIT and the workspace allocations
+    private static final int WARM_UP_FRAMES = 5;
+    private static final int SAMPLES_PER_HEIGHT = 10;
+    private static final double BUDGET_PERCENTILE = 0.75;
+
+    private final int[] mHeights;
+    private final long mBudgetNanos;
+    private final long[] mSamples = new long[SAMPLES_PER_HEIGHT];
+    private int mSampleCount = 0;
+    private int mWarmUp = WARM_UP_FRAMES;
+    private int mIndex = 0;
+    private int mChosenHeight;
+    private boolean mDone = false;
+
+    /**
+     * @param frameHeight heights above the frame height are not tried
+     */
+    public DetectionCalibration(int frameHeight) {
+        this(frameHeight, DEFAULT_HEIGHTS, DEFAULT_FRAME_BUDGET_MILLIS);
+    }
+
+    /**
+     * @param heights candidate detection heights, in ascending order
+     */
+    public DetectionCalibration(int frameHeight, int[] heights, double frameBudgetMillis) {
+        int count = 0;
+        while (count < heights.length && heights[count] <= frameHeight) {
+            count++;
+        }
+        // a frame smaller than every candidate is detected at its own height
+        mHeights = count == 0 ? new int[]{frameHeight} : Arrays.copyOf(heights, count);
+        mBudgetNanos = (long) (frameBudgetMillis * 1_000_000);
+        mChosenHeight = mHeights[0];
+    }
+
+    /**
+     * @param version version of the calibration that picked the stored height
+     * @return the stored height when the current calibration picked it, 0 otherwise
+     */
+    public static int getStoredHeight(int height, int version) {
+        return version == VERSION ? height : 0;
+    }
+
+    /**
+     * Detection height to use for the next frame
+     */
+    public synchronized int getHeight() {
+        return mDone ? mChosenHeight : mHeights[mIndex];
+    }
+
+    public synchronized boolean isDone() {
+        return mDone;
+    }
+
+    /**
+     * Height picked by the calibration, the smallest candidate until it is done
+     */
+    public synchronized int getChosenHeight() {
+        return mChosenHeight;
+    }
+
+    /**
+     * Accounts the detection time of a frame
+     *
+     * @return true when this sample ended the calibration
+     */
+    public synchronized boolean record(int height, long nanos) {
+        if (mDone || height != mHeights[mIndex]) {
+            return false;
+        }
+        if (mWarmUp > 0) {
+            mWarmUp--;
+            return false;
+        }
+
+        mSamples[mSampleCount++] = nanos;
+        if (mSampleCount < SAMPLES_PER_HEIGHT) {
+            return false;
+        }
+
+        Arrays.sort(mSamples);
+        long latency = mSamples[(int) Math.ceil(SAMPLES_PER_HEIGHT * BUDGET_PERCENTILE) - 1];
+        mSampleCount = 0;
+
+        if (latency <= mBudgetNanos) {
+            mChosenHeight = mHeights[mIndex];
+            if (mIndex + 1 < mHeights.length) {
+                mIndex++;
+                return false;
+            }
+        }
+        mDone = true;
+        return true;
+    }
+}
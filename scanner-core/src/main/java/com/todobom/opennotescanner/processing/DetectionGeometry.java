@@ -0,0 +1,112 @@
+package com.todobom.opennotescanner.processing;
+
+import org.opencv.core.Size;
+
+/**
+ * Everything the detection derives from the frame size and the document
+ * settings, computed once instead of on every frame.
+ *
+ * Instances are immutable, a new one is built when the frame size, the
+ * document aspect ratio, the rotation setting or the detection height changes.
+ */
+public class DetectionGeometry {
+
+    /** detection height when none is configured, see {@link DetectionCalibration} */
+    public static final int DEFAULT_DETECTION_HEIGHT = 500;
+
+    private final int frameWidth;
+    private final int frameHeight;
+    private final double documentAspectRatio;
+    private final boolean bugRotate;
+    private final int detectionHeight;
+    private final double ratio;
+    private final Size detectionSize;
+    private final int[] hotArea;
+    private final double minDocumentArea;
+    private final int[] documentArea;
+
+    public DetectionGeometry(int frameWidth, int frameHeight, double documentAspectRatio, boolean bugRotate) {
+        this(frameWidth, frameHeight, documentAspectRatio, bugRotate, DEFAULT_DETECTION_HEIGHT);
+    }
+
+    /**
+     * @param detectionHeight height frames are downscaled to before searching for documents
+     */
+    public DetectionGeometry(int frameWidth, int frameHeight, double documentAspectRatio, boolean bugRotate,
+                             int detectionHeight) {
+        this.frameWidth = frameWidth;
+        this.frameHeight = frameHeight;
+        this.documentAspectRatio = documentAspectRatio;
+        this.bugRotate = bugRotate;
+
+        this.detectionHeight = detectionHeight;
+        ratio = (double) frameHeight / detectionHeight;
+        detectionSize = new Size((int) (frameWidth / ratio), (int) (frameHeight / ratio));
+        hotArea = DocumentAreas.getHotArea((int) detectionSize.width, (int) detectionSize.height, documentAspectRatio);
+        minDocumentArea = Math.max(0, (hotArea[2] - hotArea[0]) * (hotArea[3] - hotArea[1]));
+        documentArea = documentAspectRatio == 0 ? null :
+                DocumentAreas.getDocumentArea(frameWidth, frameHeight, documentAspectRatio);
+    }
+
+    public int getFrameWidth() {
+        return frameWidth;
+    }
+
+    public int getFrameHeight() {
+        return frameHeight;
+    }
+
+    public double getDocumentAspectRatio() {
+        return documentAspectRatio;
+    }
+
+    public boolean getBugRotate() {
+        return bugRotate;
+    }
+
+    /**
+     * frames are downscaled to this height before searching for documents
+     */
+    public int getDetectionHeight() {
+        return detectionHeight;
+    }
+
+    /**
+     * frame pixels per detection pixel
+     */
+    public double getRatio() {
+        return ratio;
+    }
+
+    public Size getDetectionSize() {
+        return detectionSize;
+    }
+
+    /**
+     * left, top, right and bottom limits a document must reach, in detection coordinates
+     */
+    public int[] getHotArea() {
+        return hotArea;
+    }
+
+    /**
+     * a document surrounding the hot area can not be smaller than it
+     */
+    public double getMinDocumentArea() {
+        return minDocumentArea;
+    }
+
+    /**
+     * area the document should be placed in, in frame coordinates, null without a page format
+     */
+    public int[] getDocumentArea() {
+        return documentArea;
+    }
+
+    public boolean matches(int frameWidth, int frameHeight, double documentAspectRatio, boolean bugRotate,
+                           int detectionHeight) {
+        return this.frameWidth == frameWidth && this.frameHeight == frameHeight
+                && this.documentAspectRatio == documentAspectRatio && this.bugRotate == bugRotate
+                && this.detectionHeight == detectionHeight;
+    }
+}
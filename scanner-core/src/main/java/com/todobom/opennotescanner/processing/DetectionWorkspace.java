@@ -0,0 +1,69 @@
+package com.todobom.opennotescanner.processing;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint2f;
+import org.opencv.core.Size;
+
+/**
+ * Scratch images of the document detection, reused from frame to frame.
+ *
+ * A workspace must only be used by one thread at a time, the buffers are only
+ * reallocated when the size of the frames changes. Every (re)allocation is
+ * counted in {@link #getNativeAllocations()}.
+ */
+public class DetectionWorkspace {
+
+    /** downscaled source, only used for colour input */
+    public final Mat resized = new Mat();
+    /** downscaled gray image */
+    public final Mat gray = new Mat();
+    public final Mat blurred = new Mat();
+    public final Mat canned = new Mat();
+    public final Mat hierarchy = new Mat();
+
+    /** contour being approximated, converted to floating point */
+    public final MatOfPoint2f contour2f = new MatOfPoint2f();
+    public final MatOfPoint2f approx = new MatOfPoint2f();
+
+    public final ContourCandidates candidates = new ContourCandidates();
+
+    private long mNativeAllocations;
+
+    /**
+     * Makes sure the images of the detection size are allocated, nothing
+     * happens when they already have that size
+     */
+    public void ensureSize(Size size, int sourceType) {
+        int rows = (int) size.height;
+        int cols = (int) size.width;
+
+        if (CvType.channels(sourceType) != 1) {
+            ensure(resized, rows, cols, sourceType);
+        }
+        ensure(gray, rows, cols, CvType.CV_8UC1);
+        ensure(blurred, rows, cols, CvType.CV_8UC1);
+        ensure(canned, rows, cols, CvType.CV_8UC1);
+    }
+
+    private void ensure(Mat mat, int rows, int cols, int type) {
+        if (mat.rows() != rows || mat.cols() != cols || mat.type() != type) {
+            mat.create(rows, cols, type);
+            mNativeAllocations++;
+        }
+    }
+
+    public long getNativeAllocations() {
+        return mNativeAllocations;
+    }
+
+    public void release() {
+        resized.release();
+        gray.release();
+        blurred.release();
+        canned.release();
+        hierarchy.release();
+        contour2f.release();
+        approx.release();
+    }
+}
@@ -0,0 +1,74 @@
+package com.todobom.opennotescanner.processing;
+
+/**
+ * Placement of the document in a frame, as left, top, right and bottom limits.
+ *
+ * ATTENTION: frames are in landscape while the app is used in portrait, the
+ * axis of the page format are swapped.
+ */
+public final class DocumentAreas {
+
+    private DocumentAreas() {
+    }
+
+    /**
+     * Area a document of the given aspect ratio should be placed in
+     */
+    public static int[] getDocumentArea(int width, int height, double documentAspectRatio) {
+        if (documentAspectRatio == 0) {
+            throw new IllegalArgumentException("do not use getDocumentArea without an aspect ratio");
+        }
+
+        int[] documentArea = new int[4];
+
+        float imageRatio = (float) width / (float) height;
+        int bottomPos;
+        int topPos;
+        int leftPos;
+        int rightPos;
+
+        if (imageRatio >= documentAspectRatio) {
+            float documentWidth = (float) (height - height / 10);
+            float documentHeight = (float) (documentWidth * documentAspectRatio);
+
+            topPos = height / 20;
+            bottomPos = height - topPos;
+            leftPos = (int) ((width - documentHeight) / 2);
+            rightPos = width - leftPos;
+        } else {
+            float documentHeight = (float) (width - width / 5);
+            float documentWidth = (float) (documentHeight / documentAspectRatio);
+
+            leftPos = width / 10;
+            rightPos = width - leftPos;
+            topPos = (int) ((height - documentWidth) / 2);
+            bottomPos = height - topPos;
+        }
+
+        documentArea[0] = leftPos;
+        documentArea[1] = topPos;
+        documentArea[2] = rightPos;
+        documentArea[3] = bottomPos;
+        return documentArea;
+    }
+
+    /**
+     * Limits a document has to reach to be accepted, without a page format
+     * it is a centered square of half the frame height
+     */
+    public static int[] getHotArea(int width, int height, double documentAspectRatio) {
+        if (documentAspectRatio == 0) {
+            int baseMeasure = height / 4;
+            return new int[]{width / 2 - baseMeasure, baseMeasure, width / 2 + baseMeasure, height - baseMeasure};
+        }
+
+        int[] hotArea = getDocumentArea(width, height, documentAspectRatio);
+        int hotOffset = height / 10;
+
+        hotArea[0] += hotOffset;
+        hotArea[1] += hotOffset;
+        hotArea[2] -= hotOffset;
+        hotArea[3] -= hotOffset;
+        return hotArea;
+    }
+}
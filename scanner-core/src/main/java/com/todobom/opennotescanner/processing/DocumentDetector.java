@@ -0,0 +1,227 @@
+package com.todobom.opennotescanner.processing;
+
+import com.todobom.opennotescanner.processing.PipelineMetrics.Stage;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.MatOfPoint2f;
+import org.opencv.core.Point;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Finds the outline of a document in a frame.
+ *
+ * Frames are downscaled to the detection size of their {@link DetectionGeometry},
+ * edges are searched on the gray image and the biggest four sided contour
+ * reaching the hot area is the document. The scratch images live in a
+ * {@link DetectionWorkspace} per calling thread, so one detector can serve
+ * the preview analysis pool and the picture processing at the same time.
+ */
+public class DocumentDetector {
+
+    // contour area shrinks a little when approximated as a quad
+    private static final double MIN_AREA_TOLERANCE = 0.8;
+
+    public static final double DEFAULT_CANNY_LOW = 75;
+    public static final double DEFAULT_CANNY_HIGH = 200;
+    // approximation tolerance, relative to the contour perimeter
+    public static final double DEFAULT_APPROX_EPSILON = 0.02;
+
+    private final double mCannyLow;
+    private final double mCannyHigh;
+    private final double mApproxEpsilon;
+
+    private final PipelineMetrics mMetrics = PipelineMetrics.getInstance();
+
+    // every workspace handed out, so the ones of finished threads can be freed too
+    private final Set<DetectionWorkspace> mWorkspaces = ConcurrentHashMap.newKeySet();
+    private volatile ThreadLocal<DetectionWorkspace> mWorkspace = newWorkspaces();
+
+    public DocumentDetector() {
+        this(DEFAULT_CANNY_LOW, DEFAULT_CANNY_HIGH, DEFAULT_APPROX_EPSILON);
+    }
+
+    /**
+     * @param cannyLow lower hysteresis threshold of the edge detection
+     * @param cannyHigh upper hysteresis threshold of the edge detection
+     * @param approxEpsilon polygon approximation tolerance, as a fraction of the contour perimeter
+     */
+    public DocumentDetector(double cannyLow, double cannyHigh, double approxEpsilon) {
+        mCannyLow = cannyLow;
+        mCannyHigh = cannyHigh;
+        mApproxEpsilon = approxEpsilon;
+    }
+
+    /**
+     * Detects the document of a full size image
+     *
+     * @return the document in detection coordinates or null
+     */
+    public Quadrilateral detect(Mat src, DetectionGeometry geometry) {
+        Mat grayImage = toDetectionGray(src, geometry);
+        return getQuadrilateral(findContours(grayImage, false), geometry);
+    }
+
+    /**
+     * Downscales src to the detection size, as gray. The returned image belongs to
+     * the detection workspace of the calling thread and is overwritten by the next call.
+     */
+    public Mat toDetectionGray(Mat src, DetectionGeometry geometry) {
+
+        Size size = geometry.getDetectionSize();
+
+        DetectionWorkspace workspace = mWorkspace.get();
+        workspace.ensureSize(size, src.type());
+
+        if (src.channels() == 1) {
+            // preview frames are already the luminance plane
+            Imgproc.resize(src, workspace.gray, size);
+        } else {
+            Imgproc.resize(src, workspace.resized, size);
+            Imgproc.cvtColor(workspace.resized, workspace.gray, Imgproc.COLOR_RGBA2GRAY);
+        }
+
+        return workspace.gray;
+    }
+
+    /**
+     * Finds the contours of a downscaled gray image. The image itself is left untouched.
+     *
+     * @param preview true to account the stages in the preview metrics
+     */
+    public List<MatOfPoint> findContours(Mat grayImage, boolean preview) {
+
+        DetectionWorkspace workspace = mWorkspace.get();
+        workspace.ensureSize(grayImage.size(), grayImage.type());
+
+        long start = preview ? mMetrics.start() : 0;
+        Imgproc.GaussianBlur(grayImage, workspace.blurred, new Size(5, 5), 0);
+        Imgproc.Canny(workspace.blurred, workspace.canned, mCannyLow, mCannyHigh);
+        mMetrics.stop(Stage.PREVIEW_CANNY, start);
+
+        ArrayList<MatOfPoint> contours = new ArrayList<MatOfPoint>();
+
+        start = preview ? mMetrics.start() : 0;
+        Imgproc.findContours(workspace.canned, contours, workspace.hierarchy, Imgproc.RETR_LIST, Imgproc.CHAIN_APPROX_SIMPLE);
+        mMetrics.stop(Stage.PREVIEW_FIND_CONTOURS, start);
+
+        return contours;
+    }
+
+    /**
+     * Picks the biggest contour that approximates to four corners surrounding the hot area
+     *
+     * @return the document with its corners sorted or null
+     */
+    public Quadrilateral getQuadrilateral( List<MatOfPoint> contours , DetectionGeometry geometry ) {
+
+        int[] hotArea = geometry.getHotArea();
+
+        double minArea = geometry.getMinDocumentArea() * MIN_AREA_TOLERANCE;
+
+        DetectionWorkspace workspace = mWorkspace.get();
+        MatOfPoint2f c2f = workspace.contour2f;
+        MatOfPoint2f approx = workspace.approx;
+        ContourCandidates candidates = workspace.candidates;
+
+        int count = candidates.select(contours, minArea);
+
+        for ( int i = 0; i < count; i++ ) {
+            MatOfPoint c = contours.get(candidates.getIndex(i));
+            c.convertTo(c2f, CvType.CV_32FC2);
+            double peri = Imgproc.arcLength(c2f, true);
+            Imgproc.approxPolyDP(c2f, approx, mApproxEpsilon * peri, true);
+
+            Point[] points = approx.toArray();
+
+            // select biggest 4 angles polygon
+            if (points.length == 4) {
+                Point[] foundPoints = sortPoints(points);
+
+                if (insideHotArea(foundPoints, hotArea)) {
+                    return new Quadrilateral( c , foundPoints );
+                }
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Orders four corners as top-left, top-right, bottom-right and bottom-left
+     */
+    public static Point[] sortPoints( Point[] src ) {
+
+        ArrayList<Point> srcPoints = new ArrayList<>(Arrays.asList(src));
+
+        Point[] result = { null , null , null , null };
+
+        Comparator<Point> sumComparator = (lhs, rhs) -> Double.valueOf(lhs.y + lhs.x).compareTo(rhs.y + rhs.x);
+
+        Comparator<Point> diffComparator = (lhs, rhs) -> Double.valueOf(lhs.y - lhs.x).compareTo(rhs.y - rhs.x);
+
+        // top-left corner = minimal sum
+        result[0] = Collections.min(srcPoints, sumComparator);
+
+        // bottom-right corner = maximal sum
+        result[2] = Collections.max(srcPoints, sumComparator);
+
+        // top-right corner = minimal diference
+        result[1] = Collections.min(srcPoints, diffComparator);
+
+        // bottom-left corner = maximal diference
+        result[3] = Collections.max(srcPoints, diffComparator);
+
+        return result;
+    }
+
+    public static boolean insideHotArea(Point[] rp, int[] hotArea) {
+
+        return (
+                rp[0].x <= hotArea[0] && rp[0].y <= hotArea[1]
+                        && rp[1].x >= hotArea[2] && rp[1].y <= hotArea[1]
+                        && rp[2].x >= hotArea[2] && rp[2].y >= hotArea[3]
+                        && rp[3].x <= hotArea[0] && rp[3].y >= hotArea[3]
+        );
+    }
+
+    private ThreadLocal<DetectionWorkspace> newWorkspaces() {
+        return new ThreadLocal<DetectionWorkspace>() {
+            @Override
+            protected DetectionWorkspace initialValue() {
+                DetectionWorkspace workspace = new DetectionWorkspace();
+                mWorkspaces.add(workspace);
+                return workspace;
+            }
+        };
+    }
+
+    /**
+     * Frees the workspaces of every thread, including threads that are gone. No
+     * detection may be running, a later one starts with a new workspace.
+     */
+    public void release() {
+        mWorkspace = newWorkspaces();
+        for (DetectionWorkspace workspace : mWorkspaces) {
+            workspace.release();
+            mWorkspaces.remove(workspace);
+        }
+    }
+
+    /**
+     * Native (re)allocations done by the detection workspace of the calling thread
+     */
+    public long getWorkspaceAllocations() {
+        return mWorkspace.get().getNativeAllocations();
+    }
+}
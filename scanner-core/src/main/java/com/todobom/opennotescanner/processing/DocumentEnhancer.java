@@ -0,0 +1,132 @@
+package com.todobom.opennotescanner.processing;
+
+import org.opencv.core.Mat;
+
+/**
+ * Cleans up a straightened document according to the colour and filter modes,
+ * or an explicitly chosen {@link FilterPreset}.
+ *
+ * In B/W mode the document is turned gray and, with the filter on, binarized.
+ * In colour mode with the filter on the background is whitened and the ink
+ * colours are saturated in a single pass, see {@link ColorBoostFilter}.
+ * Both tell the ink from the paper with the selected {@link Binarization}.
+ *
+ * The preset is run as a {@link DocumentFilterChain}, in bands on every core,
+ * see {@link TileExecutor}, with temporaries kept in a {@link ScratchPool}
+ * from one capture to the next.
+ */
+public class DocumentEnhancer {
+
+    public enum Binarization {
+        /** mean of a 225 pixels wide neighbourhood at full resolution */
+        ADAPTIVE_MEAN,
+        /** paper background estimated at low resolution, see {@link BackgroundBinarizer} */
+        BACKGROUND
+    }
+
+    private volatile boolean colorMode = false;
+    private volatile boolean filterMode = true;
+    private volatile FilterPreset preset;
+    private volatile Binarization binarization = Binarization.ADAPTIVE_MEAN;
+    private final DocumentFilter.Context context;
+
+    private DocumentFilterChain chain;
+    private FilterPreset chainPreset;
+    private Binarization chainBinarization;
+
+    public DocumentEnhancer() {
+        this(TileExecutor.getInstance());
+    }
+
+    public DocumentEnhancer(TileExecutor tiles) {
+        this(tiles, new ScratchPool());
+    }
+
+    public DocumentEnhancer(TileExecutor tiles, ScratchPool scratch) {
+        context = new DocumentFilter.Context(tiles, scratch);
+    }
+
+    public boolean isColorMode() {
+        return colorMode;
+    }
+
+    public void setColorMode(boolean colorMode) {
+        this.colorMode = colorMode;
+    }
+
+    public boolean isFilterMode() {
+        return filterMode;
+    }
+
+    public void setFilterMode(boolean filterMode) {
+        this.filterMode = filterMode;
+    }
+
+    /**
+     * the preset enhance runs, the one of the colour and filter modes unless one was set
+     */
+    public FilterPreset getPreset() {
+        FilterPreset preset = this.preset;
+        return preset != null ? preset : FilterPreset.of(colorMode, filterMode);
+    }
+
+    /**
+     * Runs the given preset instead of the one of the colour and filter modes, null
+     * goes back to the modes
+     */
+    public void setPreset(FilterPreset preset) {
+        this.preset = preset;
+    }
+
+    public Binarization getBinarization() {
+        return binarization;
+    }
+
+    public void setBinarization(Binarization binarization) {
+        this.binarization = binarization;
+    }
+
+    /**
+     * the chain of the current preset and binarization, built again when either changes
+     */
+    public synchronized DocumentFilterChain getChain() {
+        FilterPreset preset = getPreset();
+        Binarization binarization = this.binarization;
+        if (chain == null || chainPreset != preset || chainBinarization != binarization) {
+            chain = new DocumentFilterChain(preset.filters(binarization), context);
+            chainPreset = preset;
+            chainBinarization = binarization;
+        }
+        return chain;
+    }
+
+    /**
+     * False when the current preset only needs the gray levels of the document, it
+     * can then be captured, decoded and warped as gray
+     */
+    public boolean isColorNeeded() {
+        return getChain().isColorNeeded();
+    }
+
+    /**
+     * Frees the temporaries kept for reuse, the next enhancement allocates them again
+     */
+    public void release() {
+        context.getScratch().clear();
+    }
+
+    /**
+     * Enhances src in place, an RGB, RGBA or gray document, it may change its number
+     * of channels
+     */
+    public void enhance( Mat src ) {
+        getChain().apply(src);
+    }
+
+    /**
+     * Binarizes a single channel document in place, paper white and ink black
+     */
+    public void binarize(Mat gray) {
+        new BinarizeFilter(binarization).apply(gray, gray, context);
+    }
+}
@@ -0,0 +1,103 @@
+package com.todobom.opennotescanner.processing;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+
+/**
+ * A stage of the enhancement of a straightened document, run by a {@link DocumentFilterChain}.
+ *
+ * A filter declares the pixel format it takes and the one it produces, and the
+ * rows above and below a pixel it reads, so the chain can run it in bands next to
+ * its neighbours, see {@link TileExecutor}. Filters that need the whole page at
+ * once report {@link #WHOLE_PAGE}. Temporaries are drawn from the {@link ScratchPool}
+ * of the context instead of being allocated on every call.
+ */
+public interface DocumentFilter {
+
+    /** radius of a filter that can not run in bands */
+    int WHOLE_PAGE = -1;
+
+    enum Format {
+        /** one 8 bit channel */
+        GRAY,
+        /** three or four 8 bit channels, RGB or RGBA */
+        COLOR,
+        /** accepted input of filters working on either */
+        ANY;
+
+        public static Format of(Mat mat) {
+            return mat.channels() == 1 ? GRAY : COLOR;
+        }
+
+        boolean accepts(Format input) {
+            return this == ANY || this == input;
+        }
+    }
+
+    /**
+     * What the chain running a filter lends it
+     */
+    final class Context {
+        private final TileExecutor tiles;
+        private final ScratchPool scratch;
+
+        public Context(TileExecutor tiles, ScratchPool scratch) {
+            this.tiles = tiles;
+            this.scratch = scratch;
+        }
+
+        /**
+         * for the per pixel work of whole page filters, band filters already run in a band
+         */
+        public TileExecutor getTiles() {
+            return tiles;
+        }
+
+        public ScratchPool getScratch() {
+            return scratch;
+        }
+    }
+
+    String getName();
+
+    Format getInputFormat();
+
+    /**
+     * @param input format of the image given to the filter, one its input format accepts
+     */
+    Format getOutputFormat(Format input);
+
+    /**
+     * True when the filter leaves an image in the given format as it is, the chain
+     * then skips it
+     */
+    default boolean passesThrough(Format input) {
+        return false;
+    }
+
+    /**
+     * rows above and below a pixel the filter reads, or {@link #WHOLE_PAGE}
+     */
+    int getRadius();
+
+    /**
+     * Filters src into dst, of the same size. dst may be src itself, otherwise src
+     * is left untouched.
+     */
+    void apply(Mat src, Mat dst, Context context);
+
+    /**
+     * A single filter doing the work of this one followed by next, or null when they
+     * can not be merged
+     */
+    default DocumentFilter fuse(DocumentFilter next) {
+        return null;
+    }
+
+    /**
+     * Type of the image the filter produces from src
+     */
+    default int getOutputType(Mat src) {
+        return getOutputFormat(Format.of(src)) == Format.GRAY ? CvType.CV_8UC1 : src.type();
+    }
+}
@@ -0,0 +1,179 @@
+package com.todobom.opennotescanner.processing;
+
+import com.todobom.opennotescanner.processing.DocumentFilter.Format;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Runs a sequence of {@link DocumentFilter}s over a document.
+ *
+ * Adjacent filters that can be merged are replaced by their fusion when the chain
+ * is built. The remaining band filters next to each other run in the same bands,
+ * extended by the sum of their radii, so each band goes through all of them while
+ * it is in cache and only the last output is stitched, see {@link TileExecutor}.
+ * A group of per pixel filters runs on the rows of its bands without overlap, in
+ * place when it keeps the type of the document. Whole page filters run alone, in place.
+ *
+ * The intermediate images of a band come from the {@link ScratchPool} of the
+ * context and go back to it as soon as the next filter is done with them.
+ */
+public class DocumentFilterChain {
+
+    private static class Group {
+        final List<DocumentFilter> filters = new ArrayList<>();
+        int radius;
+    }
+
+    private final List<DocumentFilter> mFilters;
+    private final List<Group> mGroups;
+    private final DocumentFilter.Context mContext;
+
+    public static DocumentFilterChain of(DocumentFilter.Context context, DocumentFilter... filters) {
+        return new DocumentFilterChain(Arrays.asList(filters), context);
+    }
+
+    public DocumentFilterChain(List<DocumentFilter> filters, DocumentFilter.Context context) {
+        mContext = context;
+
+        List<DocumentFilter> fused = new ArrayList<>(filters.size());
+        for (DocumentFilter filter : filters) {
+            DocumentFilter previous = fused.isEmpty() ? null : fused.get(fused.size() - 1);
+            DocumentFilter merged = previous == null ? null : previous.fuse(filter);
+            if (merged != null) {
+                fused.set(fused.size() - 1, merged);
+            } else {
+                fused.add(filter);
+            }
+        }
+        mFilters = Collections.unmodifiableList(fused);
+
+        mGroups = new ArrayList<>();
+        Group group = null;
+        for (DocumentFilter filter : mFilters) {
+            if (filter.getRadius() == DocumentFilter.WHOLE_PAGE) {
+                Group whole = new Group();
+                whole.filters.add(filter);
+                whole.radius = DocumentFilter.WHOLE_PAGE;
+                mGroups.add(whole);
+                group = null;
+                continue;
+            }
+            if (group == null) {
+                group = new Group();
+                mGroups.add(group);
+            }
+            group.filters.add(filter);
+            group.radius += filter.getRadius();
+        }
+    }
+
+    /**
+     * the filters run, after fusion
+     */
+    public List<DocumentFilter> getFilters() {
+        return mFilters;
+    }
+
+    /**
+     * False when the chain turns the document gray before looking at its colours, a
+     * picture converted to gray beforehand then gives the same document, up to rounding
+     */
+    public boolean isColorNeeded() {
+        return mFilters.isEmpty() || !(mFilters.get(0) instanceof GrayscaleFilter);
+    }
+
+    /**
+     * Format of the document the chain produces from one in the given format
+     *
+     * @throws IllegalArgumentException when a filter does not accept the output of the previous one
+     */
+    public Format getOutputFormat(Format input) {
+        Format format = input;
+        for (DocumentFilter filter : mFilters) {
+            if (!filter.getInputFormat().accepts(format)) {
+                throw new IllegalArgumentException(filter.getName() + " does not take " + format + " images");
+            }
+            format = filter.getOutputFormat(format);
+        }
+        return format;
+    }
+
+    /**
+     * Filters src in place, it may change its number of channels
+     */
+    public void apply(Mat src) {
+        getOutputFormat(Format.of(src));
+
+        for (Group group : mGroups) {
+            if (group.radius == DocumentFilter.WHOLE_PAGE) {
+                group.filters.get(0).apply(src, src, mContext);
+            } else if (group.radius == 0) {
+                int cols = src.cols();
+                int type = getOutputType(group, src);
+                Mat dst = type == src.type() ? src : MatTracker.getInstance().track(new Mat(src.size(), type), "chain.output");
+                mContext.getTiles().forEachBand(src.rows(), (rowStart, rowEnd) -> {
+                    Mat in = src.submat(rowStart, rowEnd, 0, cols);
+                    Mat out = dst == src ? in : dst.submat(rowStart, rowEnd, 0, cols);
+                    applyBand(group, in, out);
+                    if (out != in) {
+                        out.release();
+                    }
+                    in.release();
+                });
+                if (dst != src) {
+                    dst.assignTo(src);
+                    MatTracker.getInstance().release(dst);
+                }
+            } else {
+                mContext.getTiles().apply(src, group.radius, (band, dst) -> applyBand(group, band, dst));
+            }
+        }
+    }
+
+    private static int getOutputType(Group group, Mat src) {
+        Format format = Format.of(src);
+        for (DocumentFilter filter : group.filters) {
+            format = filter.getOutputFormat(format);
+        }
+        return format == Format.GRAY ? CvType.CV_8UC1 : src.type();
+    }
+
+    /**
+     * Runs the filters of a group from band to dst, which may be band itself
+     */
+    private void applyBand(Group group, Mat band, Mat dst) {
+        ScratchPool scratch = mContext.getScratch();
+        List<DocumentFilter> filters = group.filters;
+
+        Mat in = band;
+        for (int i = 0; i < filters.size(); i++) {
+            DocumentFilter filter = filters.get(i);
+            if (i < filters.size() - 1 && filter.passesThrough(Format.of(in))) {
+                continue;
+            }
+            int type = filter.getOutputType(in);
+            Mat out;
+            if (i == filters.size() - 1) {
+                out = dst;
+            } else if ((in != band || band == dst) && in.type() == type) {
+                // an intermediate image nobody else reads is overwritten
+                out = in;
+            } else {
+                out = scratch.acquireLike(in, type);
+            }
+
+            filter.apply(in, out, mContext);
+
+            if (in != band && in != out) {
+                scratch.release(in);
+            }
+            in = out;
+        }
+    }
+}
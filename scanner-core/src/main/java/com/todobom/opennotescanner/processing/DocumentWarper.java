@@ -0,0 +1,63 @@
+package com.todobom.opennotescanner.processing;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Cuts a detected document out of a picture, straightened to a rectangle
+ */
+public final class DocumentWarper {
+
+    private DocumentWarper() {
+    }
+
+    /**
+     * @param src full size picture, of any number of channels
+     * @param pts corners of the document sorted as by {@link DocumentDetector#sortPoints}
+     * @param ratio picture pixels per unit of pts
+     * @return the document in the type of src, a new mat owned by the caller
+     */
+    public static Mat fourPointTransform( Mat src , Point[] pts , double ratio ) {
+
+        MatTracker mats = MatTracker.getInstance();
+
+        Point tl = pts[0];
+        Point tr = pts[1];
+        Point br = pts[2];
+        Point bl = pts[3];
+
+        double widthA = Math.sqrt(Math.pow(br.x - bl.x, 2) + Math.pow(br.y - bl.y, 2));
+        double widthB = Math.sqrt(Math.pow(tr.x - tl.x, 2) + Math.pow(tr.y - tl.y, 2));
+
+        double dw = Math.max(widthA, widthB)*ratio;
+        int maxWidth = Double.valueOf(dw).intValue();
+
+
+        double heightA = Math.sqrt(Math.pow(tr.x - br.x, 2) + Math.pow(tr.y - br.y, 2));
+        double heightB = Math.sqrt(Math.pow(tl.x - bl.x, 2) + Math.pow(tl.y - bl.y, 2));
+
+        double dh = Math.max(heightA, heightB)*ratio;
+        int maxHeight = Double.valueOf(dh).intValue();
+
+        // a gray picture is warped as gray, for a B/W scan a third of the bytes of the RGB decode
+        Mat doc = mats.track(new Mat(maxHeight, maxWidth, src.type()), "fourPointTransform.doc");
+
+        Mat src_mat = mats.track(new Mat(4, 1, CvType.CV_32FC2), "fourPointTransform.src");
+        Mat dst_mat = mats.track(new Mat(4, 1, CvType.CV_32FC2), "fourPointTransform.dst");
+
+        src_mat.put(0, 0, tl.x*ratio, tl.y*ratio, tr.x*ratio, tr.y*ratio, br.x*ratio, br.y*ratio, bl.x*ratio, bl.y*ratio);
+        dst_mat.put(0, 0, 0.0, 0.0, dw, 0.0, dw, dh, 0.0, dh);
+
+        Mat m = mats.track(Imgproc.getPerspectiveTransform(src_mat, dst_mat), "fourPointTransform.m");
+
+        Imgproc.warpPerspective(src, doc, m, doc.size());
+
+        mats.release(m);
+        mats.release(src_mat);
+        mats.release(dst_mat);
+
+        return doc;
+    }
+}
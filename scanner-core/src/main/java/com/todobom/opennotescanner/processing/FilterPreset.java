@@ -0,0 +1,56 @@
+package com.todobom.opennotescanner.processing;
+
+import com.todobom.opennotescanner.processing.DocumentEnhancer.Binarization;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The enhancements offered for a straightened document, each one a sequence of
+ * {@link DocumentFilter}s
+ */
+public enum FilterPreset {
+    /** colour mode without the filter */
+    ORIGINAL,
+    /** B/W mode without the filter */
+    GRAYSCALE,
+    /** B/W mode with the filter */
+    BLACK_WHITE,
+    /** B/W with the dots left on the paper removed */
+    BLACK_WHITE_DESPECKLED,
+    /** colour mode with the filter */
+    COLOR_BOOST,
+    /** colour mode with the strokes sharpened before the filter */
+    COLOR_BOOST_SHARPENED;
+
+    /**
+     * The preset of the colour and filter modes of the app
+     */
+    public static FilterPreset of(boolean colorMode, boolean filterMode) {
+        if (colorMode) {
+            return filterMode ? COLOR_BOOST : ORIGINAL;
+        }
+        return filterMode ? BLACK_WHITE : GRAYSCALE;
+    }
+
+    /**
+     * the filters of the preset, telling the ink from the paper with binarization
+     */
+    public List<DocumentFilter> filters(Binarization binarization) {
+        switch (this) {
+            case GRAYSCALE:
+                return Collections.singletonList(new GrayscaleFilter());
+            case BLACK_WHITE:
+                return Arrays.asList(new GrayscaleFilter(), new BinarizeFilter(binarization));
+            case BLACK_WHITE_DESPECKLED:
+                return Arrays.asList(new GrayscaleFilter(), new BinarizeFilter(binarization), new DespeckleFilter());
+            case COLOR_BOOST:
+                return Collections.singletonList(new ColorBoostFilter(binarization));
+            case COLOR_BOOST_SHARPENED:
+                return Arrays.asList(new SharpenFilter(), new ColorBoostFilter(binarization));
+            default:
+                return Collections.emptyList();
+        }
+    }
+}
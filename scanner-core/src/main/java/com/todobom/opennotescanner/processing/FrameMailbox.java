@@ -0,0 +1,62 @@
+package com.todobom.opennotescanner.processing;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Lock-free single slot mailbox where the latest frame wins.
+ *
+ * A producer posting a frame while the previous one was not taken yet
+ * replaces it, the stale frame is handed back to the producer so it can
+ * be recycled and is accounted as dropped.
+ */
+public class FrameMailbox<T> {
+
+    private final AtomicReference<T> slot = new AtomicReference<>();
+    private final AtomicLong posted = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    /**
+     * Places a frame in the mailbox
+     *
+     * @return the stale frame that was replaced, or null if the mailbox was empty
+     */
+    public T post(T frame) {
+        posted.incrementAndGet();
+        T stale = slot.getAndSet(frame);
+        if (stale != null) {
+            dropped.incrementAndGet();
+        }
+        return stale;
+    }
+
+    /**
+     * Takes the latest frame, leaving the mailbox empty
+     *
+     * @return the latest frame or null if there is none
+     */
+    public T take() {
+        return slot.getAndSet(null);
+    }
+
+    /**
+     * Empties the mailbox, the discarded frame is accounted as dropped
+     *
+     * @return the discarded frame, or null if the mailbox was empty
+     */
+    public T clear() {
+        T stale = slot.getAndSet(null);
+        if (stale != null) {
+            dropped.incrementAndGet();
+        }
+        return stale;
+    }
+
+    public long getPostedCount() {
+        return posted.get();
+    }
+
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+}
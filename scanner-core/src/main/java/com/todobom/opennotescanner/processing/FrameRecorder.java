@@ -0,0 +1,150 @@
+package com.todobom.opennotescanner.processing;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Records preview frames to a raw NV21 dump, to be played back later by
+ * {@link ReplayFrameSource}.
+ *
+ * The dump starts with a header of four big endian ints: {@link #MAGIC},
+ * {@link #VERSION}, width and height. Each frame follows as a long timestamp
+ * in nanoseconds and the width * height * 3 / 2 bytes of the NV21 frame.
+ *
+ * Frames are copied to buffers of the recorder and written on a thread of its
+ * own, so recording does not hold the camera buffers. When the writer falls
+ * behind frames are skipped rather than queued without limit.
+ */
+public class FrameRecorder {
+
+    public static final int MAGIC = 0x4F4E5346; // "ONSF"
+    public static final int VERSION = 1;
+
+    private static final int DEFAULT_BUFFER_COUNT = 8;
+
+    private static final byte[] END = new byte[0];
+
+    private final int mWidth;
+    private final int mHeight;
+    private final int mFrameSize;
+    private final DataOutputStream mOut;
+    private final BlockingQueue<byte[]> mFree;
+    private final BlockingQueue<byte[]> mPending;
+    private final BlockingQueue<Long> mTimestamps;
+    private final Thread mWriter;
+    private volatile IOException mError;
+    private volatile boolean mClosed = false;
+    private long mRecorded = 0;
+    private long mSkipped = 0;
+
+    public FrameRecorder(OutputStream out, int width, int height) throws IOException {
+        this(out, width, height, DEFAULT_BUFFER_COUNT);
+    }
+
+    public FrameRecorder(OutputStream out, int width, int height, int bufferCount) throws IOException {
+        mWidth = width;
+        mHeight = height;
+        mFrameSize = frameSize(width, height);
+        mOut = new DataOutputStream(new BufferedOutputStream(out, mFrameSize));
+        mFree = new ArrayBlockingQueue<>(bufferCount);
+        mPending = new ArrayBlockingQueue<>(bufferCount + 1);
+        mTimestamps = new ArrayBlockingQueue<>(bufferCount + 1);
+        for (int i = 0; i < bufferCount; i++) {
+            mFree.add(new byte[mFrameSize]);
+        }
+
+        mOut.writeInt(MAGIC);
+        mOut.writeInt(VERSION);
+        mOut.writeInt(width);
+        mOut.writeInt(height);
+
+        mWriter = new Thread(this::write, "Frame Recorder");
+        mWriter.setDaemon(true);
+        mWriter.start();
+    }
+
+    public static int frameSize(int width, int height) {
+        return width * height * 3 / 2;
+    }
+
+    public boolean matches(int width, int height) {
+        return mWidth == width && mHeight == height;
+    }
+
+    /**
+     * Queues a copy of the frame for writing
+     *
+     * @return false when the frame was skipped, because the writer is behind or failed
+     */
+    public synchronized boolean record(byte[] data, long timestampNanos) {
+        byte[] buffer = mClosed || mError != null ? null : mFree.poll();
+        if (buffer == null) {
+            mSkipped++;
+            return false;
+        }
+        System.arraycopy(data, 0, buffer, 0, mFrameSize);
+        mTimestamps.add(timestampNanos);
+        mPending.add(buffer);
+        mRecorded++;
+        return true;
+    }
+
+    private void write() {
+        try {
+            while (true) {
+                byte[] buffer = mPending.take();
+                if (buffer == END) {
+                    break;
+                }
+                long timestamp = mTimestamps.take();
+                if (mError == null) {
+                    try {
+                        mOut.writeLong(timestamp);
+                        mOut.write(buffer, 0, mFrameSize);
+                    } catch (IOException e) {
+                        mError = e;
+                    }
+                }
+                mFree.add(buffer);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Writes the queued frames and closes the stream
+     *
+     * @throws IOException the first error met while writing
+     */
+    public void close() throws IOException {
+        synchronized (this) {
+            if (mClosed) {
+                return;
+            }
+            mClosed = true;
+            mPending.add(END);
+        }
+        try {
+            mWriter.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        mOut.close();
+        if (mError != null) {
+            throw mError;
+        }
+    }
+
+    public synchronized long getRecordedFrames() {
+        return mRecorded;
+    }
+
+    public synchronized long getSkippedFrames() {
+        return mSkipped;
+    }
+}
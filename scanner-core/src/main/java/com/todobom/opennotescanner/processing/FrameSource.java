@@ -0,0 +1,27 @@
+package com.todobom.opennotescanner.processing;
+
+/**
+ * Something delivering NV21 preview frames: the live camera or a recording.
+ *
+ * Frames are delivered in buffers owned by the source, the listener hands each
+ * one back with {@link #recycle} once done with it, possibly from another thread.
+ * A source running out of buffers drops frames, like the camera does.
+ */
+public interface FrameSource {
+
+    interface Listener {
+        /**
+         * @param data NV21 frame, valid until given back with {@link FrameSource#recycle}
+         */
+        void onFrame(FrameSource source, byte[] data, int width, int height);
+    }
+
+    void start(Listener listener);
+
+    void stop();
+
+    /**
+     * Gives a frame buffer back to the source, buffers it does not own are ignored
+     */
+    void recycle(byte[] data);
+}
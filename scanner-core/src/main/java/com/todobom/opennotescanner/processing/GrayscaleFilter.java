@@ -0,0 +1,52 @@
+package com.todobom.opennotescanner.processing;
+
+import org.opencv.core.Mat;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Turns a colour document gray, a gray one is copied as is
+ */
+public class GrayscaleFilter implements DocumentFilter {
+
+    @Override
+    public String getName() {
+        return "grayscale";
+    }
+
+    @Override
+    public Format getInputFormat() {
+        return Format.ANY;
+    }
+
+    @Override
+    public Format getOutputFormat(Format input) {
+        return Format.GRAY;
+    }
+
+    @Override
+    public boolean passesThrough(Format input) {
+        return input == Format.GRAY;
+    }
+
+    @Override
+    public int getRadius() {
+        return 0;
+    }
+
+    @Override
+    public void apply(Mat src, Mat dst, Context context) {
+        if (src.channels() == 1) {
+            if (src != dst) {
+                src.copyTo(dst);
+            }
+        } else {
+            Imgproc.cvtColor(src, dst, src.channels() == 4 ? Imgproc.COLOR_RGBA2GRAY : Imgproc.COLOR_RGB2GRAY);
+        }
+    }
+
+    @Override
+    public DocumentFilter fuse(DocumentFilter next) {
+        // a gray image stays as it is
+        return next instanceof GrayscaleFilter ? this : null;
+    }
+}
@@ -0,0 +1,180 @@
+package com.todobom.opennotescanner.processing;
+
+import org.opencv.core.Mat;
+
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bookkeeping of the native memory held by {@link Mat}s of the capture path.
+ *
+ * The Java heap only sees the small {@link Mat} header, the pixels live in native
+ * memory until {@link Mat#release()} or a late finalizer, so a forgotten release
+ * on a multi megapixel picture is invisible to the GC. Mats created through
+ * {@link #track} are recorded with their allocation site and size, and
+ * {@link #release} drops the record. Every allocation belongs to the capture
+ * running when it was made, whatever is still alive when the capture ends is
+ * reported as leaked.
+ *
+ * Tracking is off by default, {@link #track} and {@link #release} then do nothing
+ * beyond releasing.
+ */
+public class MatTracker {
+
+    private static final MatTracker INSTANCE = new MatTracker();
+
+    public static MatTracker getInstance() {
+        return INSTANCE;
+    }
+
+    private static class Allocation {
+        final String site;
+        final int capture;
+        final WeakReference<Mat> mat;
+        long bytes;
+
+        Allocation(String site, int capture, Mat mat) {
+            this.site = site;
+            this.capture = capture;
+            this.mat = new WeakReference<>(mat);
+            this.bytes = sizeOf(mat);
+        }
+
+        /**
+         * Output mats are often created empty and filled later, the size is
+         * read again while the mat is still reachable
+         */
+        long refreshBytes() {
+            Mat m = mat.get();
+            if (m != null) {
+                bytes = sizeOf(m);
+            }
+            return bytes;
+        }
+    }
+
+    private final Map<Long, Allocation> mLive = new ConcurrentHashMap<>();
+    private final AtomicInteger mCapture = new AtomicInteger();
+    private final AtomicLong mAllocations = new AtomicLong();
+    private final AtomicLong mReleases = new AtomicLong();
+    private volatile boolean enabled = false;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        if (!enabled) {
+            mLive.clear();
+        }
+    }
+
+    /**
+     * Records a mat allocated at site
+     *
+     * @return the same mat, so creation can be wrapped in place
+     */
+    public <T extends Mat> T track(T mat, String site) {
+        if (enabled && mat != null) {
+            mLive.put(mat.nativeObj, new Allocation(site, mCapture.get(), mat));
+            mAllocations.incrementAndGet();
+        }
+        return mat;
+    }
+
+    /**
+     * Releases the native memory of the mat, tracked or not
+     */
+    public void release(Mat mat) {
+        if (mat == null) {
+            return;
+        }
+        if (enabled && mLive.remove(mat.nativeObj) != null) {
+            mReleases.incrementAndGet();
+        }
+        mat.release();
+    }
+
+    /**
+     * Starts a new capture, allocations tracked from now on belong to it
+     */
+    public void beginCapture() {
+        mCapture.incrementAndGet();
+    }
+
+    /**
+     * Describes the allocations of the current capture that were never released
+     * and the native memory tracked overall
+     */
+    public String endCapture() {
+        int capture = mCapture.get();
+        Map<String, long[]> leaks = new TreeMap<>();
+        int collected = 0;
+
+        for (Iterator<Allocation> it = mLive.values().iterator(); it.hasNext(); ) {
+            Allocation allocation = it.next();
+            if (allocation.capture != capture) {
+                continue;
+            }
+            long[] site = leaks.get(allocation.site);
+            if (site == null) {
+                site = new long[2];
+                leaks.put(allocation.site, site);
+            }
+            site[0]++;
+            site[1] += allocation.refreshBytes();
+            if (allocation.mat.get() == null) {
+                // the finalizer got to it, the memory is back but the release was missed
+                collected++;
+                it.remove();
+            }
+        }
+
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format(Locale.US, "capture %d: live mats %d (%d bytes) allocated %d released %d",
+                capture, getLiveCount(), getLiveBytes(), mAllocations.get(), mReleases.get()));
+        if (leaks.isEmpty()) {
+            sb.append(", no leaks");
+        } else {
+            sb.append(", leaked");
+            if (collected > 0) {
+                sb.append(" (").append(collected).append(" already finalized)");
+            }
+            sb.append(':');
+            for (Map.Entry<String, long[]> site : leaks.entrySet()) {
+                sb.append(' ').append(site.getKey())
+                        .append(" x").append(site.getValue()[0])
+                        .append(" ").append(site.getValue()[1]).append(" bytes;");
+            }
+        }
+        return sb.toString();
+    }
+
+    public int getLiveCount() {
+        return mLive.size();
+    }
+
+    public long getLiveBytes() {
+        long bytes = 0;
+        for (Allocation allocation : mLive.values()) {
+            bytes += allocation.refreshBytes();
+        }
+        return bytes;
+    }
+
+    public String summary() {
+        return String.format(Locale.US, "native mats %d, %.1f MB",
+                getLiveCount(), getLiveBytes() / (1024.0 * 1024.0));
+    }
+
+    private static long sizeOf(Mat mat) {
+        return mat.total() * mat.elemSize();
+    }
+}
@@ -0,0 +1,224 @@
+package com.todobom.opennotescanner.processing;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Timing registry of the scanning pipeline stages.
+ *
+ * Each stage has a histogram with fixed buckets, so recording a sample is a
+ * couple of atomic increments without any allocation. Timers read the
+ * monotonic clock only while the registry is enabled, when disabled
+ * {@link #start()} returns 0 and {@link #stop} returns right away.
+ */
+public class PipelineMetrics {
+
+    public enum Stage {
+        PREVIEW_FRAME("preview.frame"),
+        PREVIEW_NV21("preview.nv21"),
+        PREVIEW_RESIZE("preview.resize"),
+        PREVIEW_CANNY("preview.canny"),
+        PREVIEW_FIND_CONTOURS("preview.findContours"),
+        PREVIEW_APPROXIMATION("preview.approximation"),
+        PREVIEW_QR("preview.qr"),
+        CAPTURE_DECODE("capture.decode"),
+        CAPTURE_DETECT("capture.detect"),
+        CAPTURE_WARP("capture.warp"),
+        CAPTURE_ENHANCE("capture.enhance"),
+        CAPTURE_ENCODE("capture.encode"),
+        CAPTURE_WRITE("capture.mediaStoreWrite"),
+        CAPTURE_EXIF("capture.exif"),
+        PDF_PAGE("pdf.page"),
+        CLI_WRITE("cli.fileWrite");
+
+        private final String key;
+
+        Stage(String key) {
+            this.key = key;
+        }
+
+        public String getKey() {
+            return key;
+        }
+    }
+
+    /** upper bounds of the histogram buckets in microseconds, one more bucket takes the rest */
+    private static final long[] BUCKET_BOUNDS_MICROS = {
+            250, 500, 1_000, 2_000, 4_000, 8_000, 16_000, 32_000, 64_000,
+            128_000, 256_000, 512_000, 1_024_000, 2_048_000, 4_096_000
+    };
+
+    private static final PipelineMetrics INSTANCE = new PipelineMetrics();
+
+    public static PipelineMetrics getInstance() {
+        return INSTANCE;
+    }
+
+    private final Histogram[] histograms;
+    private volatile boolean enabled = false;
+
+    public PipelineMetrics() {
+        Stage[] stages = Stage.values();
+        histograms = new Histogram[stages.length];
+        for (int i = 0; i < stages.length; i++) {
+            histograms[i] = new Histogram();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * @return start timestamp to hand to {@link #stop}, 0 when disabled
+     */
+    public long start() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    public void stop(Stage stage, long startNanos) {
+        if (startNanos == 0) {
+            return;
+        }
+        record(stage, System.nanoTime() - startNanos);
+    }
+
+    public void record(Stage stage, long nanos) {
+        histograms[stage.ordinal()].record(nanos / 1000);
+    }
+
+    public long getCount(Stage stage) {
+        return histograms[stage.ordinal()].count.get();
+    }
+
+    /**
+     * Estimates a percentile of a stage from its histogram, as the upper
+     * bound of the bucket holding it, in microseconds. It is never above the
+     * largest sample.
+     */
+    public long getPercentileMicros(Stage stage, double percentile) {
+        return histograms[stage.ordinal()].percentile(percentile);
+    }
+
+    public long getMeanMicros(Stage stage) {
+        Histogram h = histograms[stage.ordinal()];
+        long count = h.count.get();
+        return count == 0 ? 0 : h.totalMicros.get() / count;
+    }
+
+    public long getMaxMicros(Stage stage) {
+        return histograms[stage.ordinal()].maxMicros.get();
+    }
+
+    public void reset() {
+        for (Histogram h : histograms) {
+            h.reset();
+        }
+    }
+
+    /**
+     * One line per stage that has samples, times in milliseconds
+     */
+    public String summary() {
+        StringBuilder sb = new StringBuilder();
+        for (Stage stage : Stage.values()) {
+            long count = getCount(stage);
+            if (count == 0) {
+                continue;
+            }
+            sb.append(String.format(Locale.US, "%-24s %6d  mean %7.1f  p50 %7.1f  p95 %7.1f  max %7.1f\n",
+                    stage.getKey(), count,
+                    getMeanMicros(stage) / 1000.0,
+                    getPercentileMicros(stage, 0.5) / 1000.0,
+                    getPercentileMicros(stage, 0.95) / 1000.0,
+                    getMaxMicros(stage) / 1000.0));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Dumps every stage with its histogram, times in microseconds
+     */
+    public String toJson() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\"bucketBoundsMicros\":[");
+        for (int i = 0; i < BUCKET_BOUNDS_MICROS.length; i++) {
+            if (i > 0) sb.append(',');
+            sb.append(BUCKET_BOUNDS_MICROS[i]);
+        }
+        sb.append("],\"stages\":{");
+        Stage[] stages = Stage.values();
+        for (int s = 0; s < stages.length; s++) {
+            Histogram h = histograms[s];
+            if (s > 0) sb.append(',');
+            sb.append('"').append(stages[s].getKey()).append("\":{")
+                    .append("\"count\":").append(h.count.get())
+                    .append(",\"meanMicros\":").append(getMeanMicros(stages[s]))
+                    .append(",\"p50Micros\":").append(h.percentile(0.5))
+                    .append(",\"p95Micros\":").append(h.percentile(0.95))
+                    .append(",\"maxMicros\":").append(h.maxMicros.get())
+                    .append(",\"buckets\":[");
+            for (int i = 0; i < h.buckets.length(); i++) {
+                if (i > 0) sb.append(',');
+                sb.append(h.buckets.get(i));
+            }
+            sb.append("]}");
+        }
+        sb.append("}}");
+        return sb.toString();
+    }
+
+    private static class Histogram {
+        final AtomicLongArray buckets = new AtomicLongArray(BUCKET_BOUNDS_MICROS.length + 1);
+        final AtomicLong count = new AtomicLong();
+        final AtomicLong totalMicros = new AtomicLong();
+        final AtomicLong maxMicros = new AtomicLong();
+
+        void record(long micros) {
+            int bucket = 0;
+            while (bucket < BUCKET_BOUNDS_MICROS.length && micros > BUCKET_BOUNDS_MICROS[bucket]) {
+                bucket++;
+            }
+            buckets.incrementAndGet(bucket);
+            count.incrementAndGet();
+            totalMicros.addAndGet(micros);
+
+            long max = maxMicros.get();
+            while (micros > max && !maxMicros.compareAndSet(max, micros)) {
+                max = maxMicros.get();
+            }
+        }
+
+        long percentile(double percentile) {
+            long total = count.get();
+            if (total == 0) {
+                return 0;
+            }
+            long max = maxMicros.get();
+            long rank = (long) Math.ceil(total * percentile);
+            long seen = 0;
+            for (int i = 0; i < buckets.length(); i++) {
+                seen += buckets.get(i);
+                if (seen >= rank) {
+                    // the bound of a bucket can be far above the samples it holds
+                    return i < BUCKET_BOUNDS_MICROS.length ? Math.min(BUCKET_BOUNDS_MICROS[i], max) : max;
+                }
+            }
+            return max;
+        }
+
+        void reset() {
+            for (int i = 0; i < buckets.length(); i++) {
+                buckets.set(i, 0);
+            }
+            count.set(0);
+            totalMicros.set(0);
+            maxMicros.set(0);
+        }
+    }
+}
@@ -0,0 +1,341 @@
+package com.todobom.opennotescanner.processing;
+
+import com.google.zxing.Result;
+import com.todobom.opennotescanner.processing.PipelineMetrics.Stage;
+
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.Point;
+
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Analysis of a preview frame, shared by the app and the replay of recorded
+ * preview sessions so both run the same code.
+ *
+ * The document is searched on the frame downscaled to the detection height,
+ * or followed by the {@link QuadTracker} while it holds it. When asked, the
+ * QR codes of the frame are decoded on the given executor along the detection,
+ * scheduled on the outcome of the previous frame, see {@link QRCodeScanner}.
+ *
+ * The detection height is either fixed or, with a {@link DetectionHeightStore},
+ * the one stored for the frame size, calibrated on the first frames when none
+ * is stored yet, see {@link DetectionCalibration}.
+ *
+ * {@link #analyze} is called from a single thread, {@link #cancel} and the
+ * setters from any thread.
+ */
+public class PreviewAnalyzer {
+
+    /**
+     * Where the calibrated detection heights are kept, per frame size
+     */
+    public interface DetectionHeightStore {
+        /**
+         * @return the height stored for frames of this size, 0 when there is none
+         */
+        int load(int width, int height);
+
+        void store(int width, int height, int detectionHeight);
+    }
+
+    public static class Analysis {
+        private final DetectionGeometry geometry;
+        private final Quadrilateral quad;
+        private final Result[] qrCodes;
+
+        Analysis(DetectionGeometry geometry, Quadrilateral quad, Result[] qrCodes) {
+            this.geometry = geometry;
+            this.quad = quad;
+            this.qrCodes = qrCodes;
+        }
+
+        public DetectionGeometry getGeometry() {
+            return geometry;
+        }
+
+        /**
+         * the document in detection coordinates, null when none was found
+         */
+        public Quadrilateral getQuad() {
+            return quad;
+        }
+
+        public boolean isDocumentDetected() {
+            return quad != null;
+        }
+
+        /**
+         * QR codes of the frame, or the last ones decoded when decoding was not due
+         */
+        public Result[] getQRCodes() {
+            return qrCodes;
+        }
+    }
+
+    private static final Result[] NO_RESULTS = {};
+
+    private final DocumentDetector mDetector;
+    private final ExecutorService mQRExecutor;
+    private final QuadTracker mQuadTracker = new QuadTracker();
+    private final QRCodeScanner mQRCodeScanner = new QRCodeScanner();
+    private final PipelineMetrics mMetrics = PipelineMetrics.getInstance();
+
+    private volatile double mDocumentAspectRatio = 0;
+    private volatile boolean mBugRotate = false;
+    private volatile boolean mQuadTracking = true;
+    private volatile boolean mResetRequested = false;
+
+    private volatile DetectionHeightStore mHeightStore;
+    private volatile int mFixedHeight = DetectionGeometry.DEFAULT_DETECTION_HEIGHT;
+    private volatile int mDetectionHeight = DetectionGeometry.DEFAULT_DETECTION_HEIGHT;
+    private volatile boolean mCalibrating = false;
+    private DetectionCalibration mCalibration;
+    private DetectionHeightStore mLoadedStore;
+    private int mLoadedWidth = -1;
+    private int mLoadedHeight = -1;
+
+    private DetectionGeometry mGeometry;
+    private boolean mDocumentInSight = false;
+    private volatile Future<Result[]> mQRResults;
+
+    /**
+     * @param qrExecutor runs the QR decoding along the detection, null to decode on the calling thread
+     */
+    public PreviewAnalyzer(DocumentDetector detector, ExecutorService qrExecutor) {
+        mDetector = detector;
+        mQRExecutor = qrExecutor;
+    }
+
+    public void setDocumentAspectRatio(double documentAspectRatio) {
+        mDocumentAspectRatio = documentAspectRatio;
+    }
+
+    public void setBugRotate(boolean bugRotate) {
+        mBugRotate = bugRotate;
+        // the crop moves to the other corner, cached results are dropped on the next frame
+        mResetRequested = true;
+    }
+
+    public void setQuadTracking(boolean quadTracking) {
+        mQuadTracking = quadTracking;
+    }
+
+    /**
+     * Detects at a fixed height, used while no height store is set
+     */
+    public void setDetectionHeight(int detectionHeight) {
+        mFixedHeight = detectionHeight;
+    }
+
+    /**
+     * Takes the detection height from the store, null for the fixed height. The
+     * height of the next frame is loaded again, or calibrated.
+     */
+    public void setDetectionHeightStore(DetectionHeightStore store) {
+        mHeightStore = store;
+    }
+
+    /**
+     * height the last frame was detected at, pictures are detected at it too
+     */
+    public int getDetectionHeight() {
+        return mDetectionHeight;
+    }
+
+    /**
+     * true while the detection height is being calibrated
+     */
+    public boolean isCalibrating() {
+        return mCalibrating;
+    }
+
+    /**
+     * Forgets the tracked document and the cached QR codes, once the current frame is done
+     */
+    public void reset() {
+        mResetRequested = true;
+    }
+
+    /**
+     * Cancels the QR decoding of the frame being analyzed, which then reports no QR codes
+     */
+    public void cancel() {
+        Future<Result[]> results = mQRResults;
+        if (results != null) {
+            results.cancel(false);
+        }
+    }
+
+    public void release() {
+        mQuadTracker.release();
+    }
+
+    public long getQRDecodeCount() {
+        return mQRCodeScanner.getDecodeCount();
+    }
+
+    /**
+     * Analyzes a preview frame
+     *
+     * @param luminance the luminance plane of the frame
+     * @param nv21 the NV21 frame, only read before the method returns
+     * @param decodeQRCodes true to look for QR codes too
+     */
+    public Analysis analyze(Mat luminance, byte[] nv21, boolean decodeQRCodes) {
+        int width = luminance.cols();
+        int height = luminance.rows();
+
+        if (mResetRequested) {
+            mResetRequested = false;
+            mQuadTracker.reset();
+            mQRCodeScanner.setBugRotate(mBugRotate);
+            mQRCodeScanner.reset();
+        }
+
+        Future<Result[]> qrResults = null;
+        if (decodeQRCodes && mQRCodeScanner.isDecodeDue(mDocumentInSight)) {
+            QRCodeScanner.Decode decode = mQRCodeScanner.prepare(nv21, width, height);
+            if (mQRExecutor != null) {
+                qrResults = mQRExecutor.submit(() -> decodeQRCodes(decode));
+                mQRResults = qrResults;
+            } else {
+                mQRCodeScanner.setResults(decodeQRCodes(decode));
+            }
+        }
+
+        DetectionGeometry geometry = getGeometry(width, height);
+        Quadrilateral quad;
+        try {
+            quad = detect(luminance, geometry);
+        } catch (RuntimeException e) {
+            if (qrResults != null) {
+                qrResults.cancel(false);
+                mQRResults = null;
+            }
+            throw e;
+        }
+        mDocumentInSight = quad != null;
+
+        Result[] results = decodeQRCodes ? mQRCodeScanner.getLastResults() : NO_RESULTS;
+        if (qrResults != null) {
+            mQRResults = null;
+            try {
+                results = qrResults.get();
+                mQRCodeScanner.setResults(results);
+            } catch (CancellationException e) {
+                results = NO_RESULTS;
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("QR code decoding failed", e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                results = NO_RESULTS;
+            }
+        }
+
+        return new Analysis(geometry, quad, results);
+    }
+
+    private Result[] decodeQRCodes(QRCodeScanner.Decode decode) {
+        long start = mMetrics.start();
+        try {
+            return decode.call();
+        } finally {
+            mMetrics.stop(Stage.PREVIEW_QR, start);
+        }
+    }
+
+    private Quadrilateral detect(Mat luminance, DetectionGeometry geometry) {
+        long start = mMetrics.start();
+        Mat grayImage = mDetector.toDetectionGray(luminance, geometry);
+        mMetrics.stop(Stage.PREVIEW_RESIZE, start);
+
+        // follow the last document when possible, the full contour search is the fallback
+        Point[] trackedPoints = mQuadTracking ? mQuadTracker.track(grayImage) : null;
+        if (trackedPoints != null && DocumentDetector.insideHotArea(trackedPoints, geometry.getHotArea())) {
+            return new Quadrilateral(null, trackedPoints);
+        }
+        mQuadTracker.reset();
+
+        DetectionCalibration calibration = mCalibration;
+        long detectionStart = calibration != null ? System.nanoTime() : 0;
+
+        List<MatOfPoint> contours = mDetector.findContours(grayImage, true);
+
+        start = mMetrics.start();
+        Quadrilateral quad = mDetector.getQuadrilateral(contours, geometry);
+        mMetrics.stop(Stage.PREVIEW_APPROXIMATION, start);
+
+        if (calibration != null) {
+            calibrate(calibration, geometry, System.nanoTime() - detectionStart);
+        }
+
+        if (quad != null && mQuadTracking) {
+            mQuadTracker.start(grayImage, quad.getPoints());
+        }
+        return quad;
+    }
+
+    /**
+     * Detection geometry of frames of the given size, built only when the size
+     * or the settings change
+     */
+    private DetectionGeometry getGeometry(int width, int height) {
+        int detectionHeight = getDetectionHeight(width, height);
+        DetectionGeometry geometry = mGeometry;
+
+        if (geometry == null || !geometry.matches(width, height, mDocumentAspectRatio, mBugRotate, detectionHeight)) {
+            geometry = new DetectionGeometry(width, height, mDocumentAspectRatio, mBugRotate, detectionHeight);
+            // the tracked corners are in the coordinates of the previous height
+            mQuadTracker.reset();
+            mGeometry = geometry;
+        }
+        return geometry;
+    }
+
+    private int getDetectionHeight(int width, int height) {
+        DetectionHeightStore store = mHeightStore;
+        if (store == null) {
+            mCalibration = null;
+            mCalibrating = false;
+            mLoadedStore = null;
+            mDetectionHeight = mFixedHeight;
+            return mDetectionHeight;
+        }
+
+        if (store != mLoadedStore || width != mLoadedWidth || height != mLoadedHeight) {
+            mLoadedStore = store;
+            mLoadedWidth = width;
+            mLoadedHeight = height;
+            int stored = store.load(width, height);
+            if (stored > 0) {
+                mDetectionHeight = stored;
+                mCalibration = null;
+            } else {
+                mCalibration = new DetectionCalibration(height);
+            }
+            mCalibrating = mCalibration != null;
+        }
+
+        DetectionCalibration calibration = mCalibration;
+        if (calibration != null) {
+            mDetectionHeight = calibration.getHeight();
+        }
+        return mDetectionHeight;
+    }
+
+    private void calibrate(DetectionCalibration calibration, DetectionGeometry geometry, long nanos) {
+        if (!calibration.record(geometry.getDetectionHeight(), nanos)) {
+            return;
+        }
+        int height = calibration.getChosenHeight();
+        mDetectionHeight = height;
+        mCalibration = null;
+        mCalibrating = false;
+        mLoadedStore.store(geometry.getFrameWidth(), geometry.getFrameHeight(), height);
+    }
+}
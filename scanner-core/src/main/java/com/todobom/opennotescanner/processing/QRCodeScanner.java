@@ -0,0 +1,189 @@
+package com.todobom.opennotescanner.processing;
+
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.PlanarYUVLuminanceSource;
+import com.google.zxing.Result;
+import com.google.zxing.common.HybridBinarizer;
+import com.google.zxing.multi.qrcode.QRCodeMultiReader;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Decodes the page template QR code straight from the luminance plane of
+ * NV21 preview frames.
+ *
+ * Only the south-east quadrant of the frame (north-west when the camera is
+ * upside down) is handed to zxing, the crop is computed once per preview size
+ * and copied out of the frame, so the decoding can outlive it.
+ * Decoding is skipped on frames where it can not change the outcome, the last
+ * results stand in for them until the next decode, at most the decode interval later.
+ */
+public class QRCodeScanner {
+
+    private static final Result[] NO_RESULTS = {};
+
+    /** decode at least every N frames even when no document is in sight */
+    public static final int DEFAULT_DECODE_INTERVAL = 5;
+
+    // the reader keeps state between calls, every decoding thread gets its own
+    private final ThreadLocal<QRCodeMultiReader> reader = ThreadLocal.withInitial(QRCodeMultiReader::new);
+    // copies of the crop, given back when their decode is done
+    private final ConcurrentLinkedQueue<byte[]> freeCrops = new ConcurrentLinkedQueue<>();
+    private final int decodeInterval;
+
+    private boolean bugRotate;
+    private int frameWidth = -1;
+    private int frameHeight = -1;
+    private int cropLeft;
+    private int cropTop;
+    private int cropWidth;
+    private int cropHeight;
+
+    private int framesSinceDecode = Integer.MAX_VALUE;
+    private Result[] lastResults = NO_RESULTS;
+    private long decodeCount;
+
+    public QRCodeScanner() {
+        this(DEFAULT_DECODE_INTERVAL);
+    }
+
+    public QRCodeScanner(int decodeInterval) {
+        this.decodeInterval = decodeInterval;
+    }
+
+    public void setBugRotate(boolean bugRotate) {
+        if (this.bugRotate != bugRotate) {
+            this.bugRotate = bugRotate;
+            frameWidth = -1;
+            lastResults = NO_RESULTS;
+        }
+    }
+
+    private void updateCrop(int width, int height) {
+        if (width == frameWidth && height == frameHeight) {
+            return;
+        }
+        frameWidth = width;
+        frameHeight = height;
+        lastResults = NO_RESULTS;
+
+        cropHeight = height / 4;
+        if (bugRotate) {
+            cropLeft = 0;
+            cropTop = height - cropHeight;
+            cropWidth = width / 2 - height / 4;
+        } else {
+            cropLeft = width / 2 + height / 4;
+            cropTop = 0;
+            cropWidth = width - cropLeft;
+        }
+    }
+
+    /**
+     * Advances the schedule by one frame and tells if the QR codes of this frame
+     * should be decoded, that is when a document is in sight or when the decode
+     * interval expired.
+     *
+     * @param documentInSight true when a document quad was found on this frame or,
+     *                        when decoding runs along the detection, on the previous one
+     */
+    public boolean isDecodeDue(boolean documentInSight) {
+        if (framesSinceDecode != Integer.MAX_VALUE) {
+            framesSinceDecode++;
+        }
+
+        return documentInSight || framesSinceDecode >= decodeInterval;
+    }
+
+    public Result[] getLastResults() {
+        return lastResults;
+    }
+
+    /**
+     * Decodes the QR codes of the frame unconditionally, the results are cached
+     */
+    public Result[] decode(byte[] nv21, int width, int height) {
+        Result[] results = prepare(nv21, width, height).call();
+        setResults(results);
+        return results;
+    }
+
+    /**
+     * Copies the crop of the frame holding the QR code, the returned decode owns
+     * the copy and can run on another thread while the frame is reused. Its
+     * results are cached with {@link #setResults}.
+     */
+    public Decode prepare(byte[] nv21, int width, int height) {
+        updateCrop(width, height);
+        decodeCount++;
+
+        int cropWidth = this.cropWidth;
+        int cropHeight = this.cropHeight;
+        if (cropWidth <= 0 || cropHeight <= 0) {
+            return new Decode(null, 0, 0);
+        }
+
+        byte[] crop = freeCrops.poll();
+        if (crop == null || crop.length != cropWidth * cropHeight) {
+            crop = new byte[cropWidth * cropHeight];
+        }
+        for (int row = 0; row < cropHeight; row++) {
+            System.arraycopy(nv21, (cropTop + row) * width + cropLeft, crop, row * cropWidth, cropWidth);
+        }
+
+        return new Decode(crop, cropWidth, cropHeight);
+    }
+
+    /**
+     * The decode of a crop copied by {@link #prepare}, run once
+     */
+    public final class Decode implements Callable<Result[]> {
+        private final byte[] crop;
+        private final int width;
+        private final int height;
+
+        private Decode(byte[] crop, int width, int height) {
+            this.crop = crop;
+            this.width = width;
+            this.height = height;
+        }
+
+        @Override
+        public Result[] call() {
+            if (crop == null) {
+                return NO_RESULTS;
+            }
+            try {
+                PlanarYUVLuminanceSource source = new PlanarYUVLuminanceSource(crop, width, height,
+                        0, 0, width, height, false);
+                return reader.get().decodeMultiple(new BinaryBitmap(new HybridBinarizer(source)));
+            } catch (NotFoundException e) {
+                return NO_RESULTS;
+            } finally {
+                freeCrops.offer(crop);
+            }
+        }
+    }
+
+    /**
+     * Caches the results of a decode returned by {@link #prepare}
+     */
+    public void setResults(Result[] results) {
+        lastResults = results;
+        framesSinceDecode = 0;
+    }
+
+    /**
+     * Forgets cached results, e.g. after a picture has been taken
+     */
+    public void reset() {
+        lastResults = NO_RESULTS;
+        framesSinceDecode = Integer.MAX_VALUE;
+    }
+
+    public long getDecodeCount() {
+        return decodeCount;
+    }
+}
@@ -0,0 +1,199 @@
+package com.todobom.opennotescanner.processing;
+
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfByte;
+import org.opencv.core.MatOfFloat;
+import org.opencv.core.MatOfPoint2f;
+import org.opencv.core.Point;
+import org.opencv.core.Size;
+import org.opencv.core.TermCriteria;
+import org.opencv.imgproc.Imgproc;
+import org.opencv.video.Video;
+
+/**
+ * Follows the corners of a detected document from one preview frame to the next.
+ *
+ * Instead of searching the whole frame again, the four corners of the last quad
+ * are tracked with pyramidal Lucas-Kanade optical flow, which only looks at small
+ * windows around them, and refined to sub-pixel accuracy. Tracking gives up as
+ * soon as the result is not trustworthy, the caller then falls back to the full
+ * contour search and restarts tracking from its result.
+ *
+ * All images are the downscaled gray frames the detection works on.
+ */
+public class QuadTracker {
+
+    /** full detection is forced after this many tracked frames, to avoid drifting */
+    public static final int MAX_TRACKED_FRAMES = 30;
+
+    private static final Size WINDOW_SIZE = new Size(21, 21);
+    private static final int MAX_PYRAMID_LEVEL = 3;
+    private static final Size REFINE_WINDOW_SIZE = new Size(5, 5);
+    private static final Size NO_ZONE = new Size(-1, -1);
+    private static final TermCriteria REFINE_CRITERIA =
+            new TermCriteria(TermCriteria.EPS + TermCriteria.COUNT, 20, 0.03);
+
+    /** highest accepted mean pixel difference around a tracked corner */
+    private static final float MAX_TRACKING_ERROR = 20;
+    /** highest accepted corner movement between frames, relative to the frame height */
+    private static final double MAX_CORNER_MOVEMENT = 0.1;
+    /** accepted area change of the quad between frames */
+    private static final double MIN_AREA_CHANGE = 0.8;
+    private static final double MAX_AREA_CHANGE = 1.25;
+
+    private final Mat mPreviousGray = new Mat();
+    private final MatOfPoint2f mPreviousPoints = new MatOfPoint2f();
+    private final MatOfPoint2f mNextPoints = new MatOfPoint2f();
+    private final MatOfByte mStatus = new MatOfByte();
+    private final MatOfFloat mError = new MatOfFloat();
+
+    private Point[] mCorners;
+    private double mArea;
+    private int mTrackedFrames;
+
+    private long mTrackedCount;
+    private long mLostCount;
+
+    public boolean isTracking() {
+        return mCorners != null;
+    }
+
+    /**
+     * Starts tracking from a quad found by the full detection
+     *
+     * @param gray frame the quad was found on
+     * @param corners sorted corners of the quad, in the coordinates of gray
+     */
+    public void start(Mat gray, Point[] corners) {
+        gray.copyTo(mPreviousGray);
+        mCorners = corners.clone();
+        mArea = quadArea(mCorners);
+        mTrackedFrames = 0;
+    }
+
+    public void reset() {
+        mCorners = null;
+    }
+
+    /**
+     * Looks for the corners of the tracked quad on a new frame
+     *
+     * @return the corners in the same order they were given to {@link #start},
+     * or null when tracking was lost and a full detection is needed
+     */
+    public Point[] track(Mat gray) {
+        if (mCorners == null) {
+            return null;
+        }
+
+        if (mTrackedFrames >= MAX_TRACKED_FRAMES || !gray.size().equals(mPreviousGray.size())) {
+            reset();
+            return null;
+        }
+
+        mPreviousPoints.fromArray(mCorners);
+        Video.calcOpticalFlowPyrLK(mPreviousGray, gray, mPreviousPoints, mNextPoints,
+                mStatus, mError, WINDOW_SIZE, MAX_PYRAMID_LEVEL);
+
+        if (!isConfident(gray.size())) {
+            mLostCount++;
+            reset();
+            return null;
+        }
+
+        Imgproc.cornerSubPix(gray, mNextPoints, REFINE_WINDOW_SIZE, NO_ZONE, REFINE_CRITERIA);
+
+        Point[] corners = mNextPoints.toArray();
+        if (!isConvex(corners)) {
+            mLostCount++;
+            reset();
+            return null;
+        }
+
+        gray.copyTo(mPreviousGray);
+        mCorners = corners;
+        mArea = quadArea(corners);
+        mTrackedFrames++;
+        mTrackedCount++;
+
+        return corners.clone();
+    }
+
+    private boolean isConfident(Size size) {
+        byte[] status = mStatus.toArray();
+        float[] error = mError.toArray();
+        Point[] next = mNextPoints.toArray();
+
+        if (status.length != 4 || next.length != 4) {
+            return false;
+        }
+
+        double maxMovement = size.height * MAX_CORNER_MOVEMENT;
+
+        for (int i = 0; i < 4; i++) {
+            if (status[i] == 0 || error[i] > MAX_TRACKING_ERROR) {
+                return false;
+            }
+            if (next[i].x < 0 || next[i].y < 0 || next[i].x >= size.width || next[i].y >= size.height) {
+                return false;
+            }
+            double dx = next[i].x - mCorners[i].x;
+            double dy = next[i].y - mCorners[i].y;
+            if (dx * dx + dy * dy > maxMovement * maxMovement) {
+                return false;
+            }
+        }
+
+        double areaChange = quadArea(next) / mArea;
+        return areaChange >= MIN_AREA_CHANGE && areaChange <= MAX_AREA_CHANGE;
+    }
+
+    /**
+     * A quad is convex when all turns along its corners have the same direction
+     */
+    private static boolean isConvex(Point[] p) {
+        int sign = 0;
+        for (int i = 0; i < 4; i++) {
+            Point a = p[i];
+            Point b = p[(i + 1) % 4];
+            Point c = p[(i + 2) % 4];
+            double cross = (b.x - a.x) * (c.y - b.y) - (b.y - a.y) * (c.x - b.x);
+            int turn = cross > 0 ? 1 : (cross < 0 ? -1 : 0);
+            if (turn == 0 || (sign != 0 && turn != sign)) {
+                return false;
+            }
+            sign = turn;
+        }
+        return true;
+    }
+
+    /**
+     * Shoelace formula, the corners must be in order around the quad
+     */
+    private static double quadArea(Point[] p) {
+        double area = 0;
+        for (int i = 0; i < 4; i++) {
+            Point a = p[i];
+            Point b = p[(i + 1) % 4];
+            area += a.x * b.y - b.x * a.y;
+        }
+        return Math.abs(area) / 2;
+    }
+
+    public long getTrackedCount() {
+        return mTrackedCount;
+    }
+
+    public long getLostCount() {
+        return mLostCount;
+    }
+
+    public void release() {
+        reset();
+        mPreviousGray.release();
+        mPreviousPoints.release();
+        mNextPoints.release();
+        mStatus.release();
+        mError.release();
+    }
+}
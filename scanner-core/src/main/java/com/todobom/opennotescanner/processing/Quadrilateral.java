@@ -0,0 +1,29 @@
+package com.todobom.opennotescanner.processing;
+
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.Point;
+
+/**
+ * A document candidate, the contour is null when the quad was tracked
+ * from a previous frame instead of being detected
+ */
+public class Quadrilateral {
+    private final MatOfPoint contour;
+    private final Point[] points;
+
+    public Quadrilateral(MatOfPoint contour, Point[] points) {
+        this.contour = contour;
+        this.points = points;
+    }
+
+    public MatOfPoint getContour() {
+        return contour;
+    }
+
+    /**
+     * @return corners sorted as top-left, top-right, bottom-right and bottom-left
+     */
+    public Point[] getPoints() {
+        return points;
+    }
+}
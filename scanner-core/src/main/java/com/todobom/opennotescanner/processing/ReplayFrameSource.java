@@ -0,0 +1,207 @@
+package com.todobom.opennotescanner.processing;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Plays a dump written by {@link FrameRecorder} back as a {@link FrameSource}.
+ *
+ * In real time the frames are delivered at the pace they were recorded and,
+ * like the camera, dropped when the listener still holds every buffer. At
+ * unlimited speed the next frame is delivered as soon as a buffer comes back,
+ * which measures the sustained throughput of the listener.
+ *
+ * Frames are delivered on the replay thread, which stops at the end of the
+ * dump, {@link #await} waits for it. A frame cut short at the end of the dump is
+ * left out.
+ */
+public class ReplayFrameSource implements FrameSource {
+
+    private static final int DEFAULT_BUFFER_COUNT = 4;
+
+    private final File mFile;
+    private final boolean mRealTime;
+    private final int mWidth;
+    private final int mHeight;
+    private final int mFrameSize;
+    private final BlockingQueue<byte[]> mFree;
+    private final Set<byte[]> mBuffers = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final byte[] mSkipBuffer;
+
+    private Thread mThread;
+    private volatile boolean mRunning = false;
+    private volatile IOException mError;
+    private volatile long mDelivered = 0;
+    private volatile long mDropped = 0;
+    private volatile long mElapsedNanos = 0;
+
+    public ReplayFrameSource(File file, boolean realTime) throws IOException {
+        this(file, realTime, DEFAULT_BUFFER_COUNT);
+    }
+
+    public ReplayFrameSource(File file, boolean realTime, int bufferCount) throws IOException {
+        mFile = file;
+        mRealTime = realTime;
+
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            if (in.readInt() != FrameRecorder.MAGIC) {
+                throw new IOException(file + " is not a frame recording");
+            }
+            int version = in.readInt();
+            if (version != FrameRecorder.VERSION) {
+                throw new IOException(file + " has an unsupported recording version " + version);
+            }
+            mWidth = in.readInt();
+            mHeight = in.readInt();
+        }
+        mFrameSize = FrameRecorder.frameSize(mWidth, mHeight);
+
+        mFree = new ArrayBlockingQueue<>(bufferCount);
+        for (int i = 0; i < bufferCount; i++) {
+            byte[] buffer = new byte[mFrameSize];
+            mBuffers.add(buffer);
+            mFree.add(buffer);
+        }
+        mSkipBuffer = new byte[mFrameSize];
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    @Override
+    public synchronized void start(Listener listener) {
+        if (mThread != null) {
+            throw new IllegalStateException("replay already started");
+        }
+        mRunning = true;
+        mThread = new Thread(() -> replay(listener), "Frame Replay");
+        mThread.start();
+    }
+
+    @Override
+    public void stop() {
+        mRunning = false;
+        Thread thread;
+        synchronized (this) {
+            thread = mThread;
+        }
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    @Override
+    public void recycle(byte[] data) {
+        synchronized (mBuffers) {
+            if (!mBuffers.contains(data)) {
+                return;
+            }
+        }
+        mFree.offer(data);
+    }
+
+    /**
+     * Waits until the whole recording was delivered or the replay stopped
+     *
+     * @throws IOException the error that ended the replay, if any
+     */
+    public void await() throws IOException, InterruptedException {
+        Thread thread;
+        synchronized (this) {
+            thread = mThread;
+        }
+        if (thread != null) {
+            thread.join();
+        }
+        if (mError != null) {
+            throw mError;
+        }
+    }
+
+    private void replay(Listener listener) {
+        long replayStart = System.nanoTime();
+        long firstTimestamp = -1;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(mFile), mFrameSize))) {
+            // header was checked by the constructor
+            in.skipBytes(16);
+
+            while (mRunning) {
+                long timestamp;
+                try {
+                    timestamp = in.readLong();
+                } catch (EOFException e) {
+                    break;
+                }
+
+                byte[] buffer;
+                if (mRealTime) {
+                    if (firstTimestamp < 0) {
+                        firstTimestamp = timestamp;
+                    }
+                    long wait = (timestamp - firstTimestamp) - (System.nanoTime() - replayStart);
+                    if (wait > 0) {
+                        Thread.sleep(wait / 1_000_000, (int) (wait % 1_000_000));
+                    }
+                    buffer = mFree.poll();
+                } else {
+                    buffer = mFree.take();
+                }
+
+                try {
+                    in.readFully(buffer != null ? buffer : mSkipBuffer);
+                } catch (EOFException e) {
+                    // the last frame is cut short when the app was killed while recording
+                    if (buffer != null) {
+                        mFree.offer(buffer);
+                    }
+                    break;
+                }
+
+                if (buffer == null) {
+                    mDropped++;
+                    continue;
+                }
+
+                mDelivered++;
+                listener.onFrame(this, buffer, mWidth, mHeight);
+            }
+        } catch (InterruptedException e) {
+            // stopped
+        } catch (IOException e) {
+            mError = e;
+        } finally {
+            mElapsedNanos = System.nanoTime() - replayStart;
+            mRunning = false;
+        }
+    }
+
+    public long getDeliveredFrames() {
+        return mDelivered;
+    }
+
+    public long getDroppedFrames() {
+        return mDropped;
+    }
+
+    /**
+     * Frames delivered per second of replay, once the replay ended
+     */
+    public double getFramesPerSecond() {
+        return mElapsedNanos == 0 ? 0 : mDelivered * 1e9 / mElapsedNanos;
+    }
+}
@@ -0,0 +1,132 @@
+package com.todobom.opennotescanner.processing;
+
+import org.opencv.core.Mat;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Temporaries of the document filters, kept for the next stage or capture
+ * instead of being freed and allocated again.
+ *
+ * A Mat is handed out again only for the same size and type, the way
+ * {@link Mat#create} reuses a buffer. Released Mats are kept up to a budget of
+ * native memory, past it the ones released first are freed. The pool is shared by
+ * the bands running side by side, every method is thread safe.
+ *
+ * The kept Mats outlive the captures, they are bounded by the budget rather than
+ * recorded by the {@link MatTracker}.
+ */
+public class ScratchPool {
+
+    /** enough for the whole page temporaries of a 12 megapixel document */
+    public static final long DEFAULT_BUDGET = 32L * 1024 * 1024;
+
+    private final long mBudget;
+    private final Map<Long, ArrayDeque<Mat>> mFree = new HashMap<>();
+    // release order, the oldest Mats are freed first
+    private final ArrayDeque<Mat> mReleased = new ArrayDeque<>();
+    private long mBytes;
+    private long mAllocations;
+    private long mReuses;
+
+    public ScratchPool() {
+        this(DEFAULT_BUDGET);
+    }
+
+    /**
+     * @param budget bytes of released Mats kept for reuse
+     */
+    public ScratchPool(long budget) {
+        mBudget = budget;
+    }
+
+    private static long key(int rows, int cols, int type) {
+        return ((long) rows << 40) | ((long) cols << 16) | type;
+    }
+
+    private static long sizeOf(Mat mat) {
+        return mat.total() * mat.elemSize();
+    }
+
+    /**
+     * A Mat of the given size and type, with undefined content, to be given back
+     * with {@link #release}
+     */
+    public Mat acquire(int rows, int cols, int type) {
+        synchronized (this) {
+            ArrayDeque<Mat> free = mFree.get(key(rows, cols, type));
+            Mat mat = free == null ? null : free.pollLast();
+            if (mat != null) {
+                mReleased.remove(mat);
+                mBytes -= sizeOf(mat);
+                mReuses++;
+                return mat;
+            }
+            mAllocations++;
+        }
+        return new Mat(rows, cols, type);
+    }
+
+    public Mat acquireLike(Mat mat, int type) {
+        return acquire(mat.rows(), mat.cols(), type);
+    }
+
+    /**
+     * Gives a Mat back for reuse, null is ignored
+     */
+    public void release(Mat mat) {
+        if (mat == null) {
+            return;
+        }
+        long bytes = sizeOf(mat);
+        if (bytes == 0 || bytes > mBudget) {
+            mat.release();
+            return;
+        }
+
+        synchronized (this) {
+            mFree.computeIfAbsent(key(mat.rows(), mat.cols(), mat.type()), k -> new ArrayDeque<>()).addLast(mat);
+            mReleased.addLast(mat);
+            mBytes += bytes;
+
+            Iterator<Mat> oldest = mReleased.iterator();
+            while (mBytes > mBudget && oldest.hasNext()) {
+                Mat evicted = oldest.next();
+                oldest.remove();
+                mFree.get(key(evicted.rows(), evicted.cols(), evicted.type())).remove(evicted);
+                mBytes -= sizeOf(evicted);
+                evicted.release();
+            }
+        }
+    }
+
+    /**
+     * Frees every Mat kept for reuse
+     */
+    public synchronized void clear() {
+        for (Mat mat : mReleased) {
+            mat.release();
+        }
+        mReleased.clear();
+        mFree.clear();
+        mBytes = 0;
+    }
+
+    /**
+     * bytes of native memory held by released Mats
+     */
+    public synchronized long getBytes() {
+        return mBytes;
+    }
+
+    public synchronized long getAllocations() {
+        return mAllocations;
+    }
+
+    public synchronized long getReuses() {
+        return mReuses;
+    }
+}
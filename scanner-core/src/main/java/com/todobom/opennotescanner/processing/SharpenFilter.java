@@ -0,0 +1,61 @@
+package com.todobom.opennotescanner.processing;
+
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Unsharp mask: adds the difference between the document and a blurred copy of
+ * it, which crisps the strokes softened by the perspective correction
+ */
+public class SharpenFilter implements DocumentFilter {
+
+    private static final int BLUR_SIZE = 5;
+    private static final double BLUR_SIGMA = 1;
+
+    private final double amount;
+
+    public SharpenFilter() {
+        this(0.5);
+    }
+
+    /**
+     * @param amount weight of the difference to the blurred copy
+     */
+    public SharpenFilter(double amount) {
+        this.amount = amount;
+    }
+
+    @Override
+    public String getName() {
+        return "sharpen";
+    }
+
+    @Override
+    public Format getInputFormat() {
+        return Format.ANY;
+    }
+
+    @Override
+    public Format getOutputFormat(Format input) {
+        return input;
+    }
+
+    @Override
+    public int getRadius() {
+        return BLUR_SIZE / 2;
+    }
+
+    @Override
+    public void apply(Mat src, Mat dst, Context context) {
+        ScratchPool scratch = context.getScratch();
+        Mat blurred = scratch.acquireLike(src, src.type());
+        // a band blurred as a view of the page rounds differently than the page itself, isolated
+        // it matches it, the rows that would see past the band are in the overlap
+        Imgproc.GaussianBlur(src, blurred, new Size(BLUR_SIZE, BLUR_SIZE), BLUR_SIGMA, BLUR_SIGMA,
+                Core.BORDER_DEFAULT | Core.BORDER_ISOLATED);
+        Core.addWeighted(src, 1 + amount, blurred, -amount, 0, dst);
+        scratch.release(blurred);
+    }
+}
@@ -0,0 +1,156 @@
+package com.todobom.opennotescanner.processing;
+
+import org.opencv.core.Mat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Runs full resolution document filters on horizontal bands, one per core.
+ *
+ * Per pixel operations work on the rows of their band in place. Filters with a
+ * neighbourhood get their band extended by the filter radius above and below,
+ * so the rows they keep see the same neighbours as on the whole image and the
+ * stitched result has no seams. Bands are at least {@value #MIN_BAND_ROWS} rows and
+ * four radii tall, images too small to pay off the overlap run in a single band.
+ */
+public class TileExecutor {
+
+    public interface RowAction {
+        /**
+         * Processes the rows from rowStart to rowEnd, excluded
+         */
+        void apply(int rowStart, int rowEnd);
+    }
+
+    public interface BandFilter {
+        /**
+         * Filters a band into dst, leaving src untouched, src is a view of the image
+         */
+        void apply(Mat src, Mat dst);
+    }
+
+    private static final int MIN_BAND_ROWS = 64;
+
+    private static final TileExecutor INSTANCE = new TileExecutor(Runtime.getRuntime().availableProcessors());
+
+    public static TileExecutor getInstance() {
+        return INSTANCE;
+    }
+
+    private final ForkJoinPool mPool;
+    private final int mParallelism;
+
+    public TileExecutor(int parallelism) {
+        mParallelism = parallelism;
+        mPool = new ForkJoinPool(parallelism);
+    }
+
+    public int getParallelism() {
+        return mParallelism;
+    }
+
+    int getBandCount(int rows, int radius) {
+        int minRows = Math.max(MIN_BAND_ROWS, radius * 4);
+        return Math.max(1, Math.min(mParallelism, rows / minRows));
+    }
+
+    /**
+     * Runs a per pixel operation over the rows in bands
+     */
+    public void forEachBand(int rows, RowAction action) {
+        int bands = getBandCount(rows, 0);
+        if (bands == 1) {
+            action.apply(0, rows);
+            return;
+        }
+
+        List<Callable<Void>> tasks = new ArrayList<>(bands);
+        for (int band = 0; band < bands; band++) {
+            int rowStart = rows * band / bands;
+            int rowEnd = rows * (band + 1) / bands;
+            tasks.add(() -> {
+                action.apply(rowStart, rowEnd);
+                return null;
+            });
+        }
+        invokeAll(tasks);
+    }
+
+    /**
+     * Replaces src by the output of the filter, computed in overlapping bands. The
+     * output may have another type than src.
+     *
+     * @param radius rows above and below a pixel the filter reads
+     */
+    public void apply(Mat src, int radius, BandFilter filter) {
+        MatTracker mats = MatTracker.getInstance();
+        int rows = src.rows();
+        int cols = src.cols();
+        int bands = getBandCount(rows, radius);
+
+        if (bands == 1) {
+            Mat dst = mats.track(new Mat(), "tile.band");
+            filter.apply(src, dst);
+            dst.assignTo(src);
+            mats.release(dst);
+            return;
+        }
+
+        Mat[] outputs = new Mat[bands];
+        List<Callable<Void>> tasks = new ArrayList<>(bands);
+        for (int band = 0; band < bands; band++) {
+            int index = band;
+            int rowStart = rows * band / bands;
+            int rowEnd = rows * (band + 1) / bands;
+            tasks.add(() -> {
+                Mat in = src.submat(Math.max(0, rowStart - radius), Math.min(rows, rowEnd + radius), 0, cols);
+                Mat out = mats.track(new Mat(), "tile.band");
+                filter.apply(in, out);
+                in.release();
+                outputs[index] = out;
+                return null;
+            });
+        }
+
+        try {
+            invokeAll(tasks);
+
+            // the bands read src until the last one is done, it is only replaced now
+            Mat dst = mats.track(new Mat(rows, cols, outputs[0].type()), "tile.stitched");
+            for (int band = 0; band < bands; band++) {
+                int rowStart = rows * band / bands;
+                int rowEnd = rows * (band + 1) / bands;
+                int offset = rowStart - Math.max(0, rowStart - radius);
+                Mat inner = outputs[band].submat(offset, offset + rowEnd - rowStart, 0, cols);
+                Mat target = dst.submat(rowStart, rowEnd, 0, cols);
+                inner.copyTo(target);
+                inner.release();
+                target.release();
+            }
+            dst.assignTo(src);
+            mats.release(dst);
+        } finally {
+            for (Mat out : outputs) {
+                mats.release(out);
+            }
+        }
+    }
+
+    private void invokeAll(List<Callable<Void>> tasks) {
+        List<Future<Void>> results = mPool.invokeAll(tasks);
+        try {
+            for (Future<Void> result : results) {
+                result.get();
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("band processing failed", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.todobom.opennotescanner.processing;
+
+import com.todobom.opennotescanner.processing.DocumentEnhancer.Binarization;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Binarizes a synthetic page whose ink mask is known, printed under a lighting
+ * gradient going from full light to a third of it
+ */
+public class BackgroundBinarizerTest {
+
+    private static final int WIDTH = 1240;
+    private static final int HEIGHT = 1754;
+
+    private static Mat sInk;
+    private static Mat sPage;
+
+    @BeforeClass
+    public static void drawPage() {
+        nu.pattern.OpenCV.loadLocally();
+        Random random = new Random(42);
+        sInk = inkMask(random);
+        sPage = print(sInk, random);
+    }
+
+    @Test
+    public void backgroundBeatsTheAdaptiveMean() {
+        double adaptive = fMeasure(binarize(Binarization.ADAPTIVE_MEAN));
+        double background = fMeasure(binarize(Binarization.BACKGROUND));
+
+        assertTrue("background " + background + " adaptive mean " + adaptive, background > adaptive);
+    }
+
+    @Test
+    public void thresholdsGiveABinaryImage() {
+        for (BackgroundBinarizer.Threshold threshold : BackgroundBinarizer.Threshold.values()) {
+            Mat result = sPage.clone();
+            new BackgroundBinarizer(threshold).binarize(result);
+
+            assertEquals(threshold + " type", CvType.CV_8UC1, result.type());
+            Mat between = new Mat();
+            Core.inRange(result, Scalar.all(1), Scalar.all(254), between);
+            assertEquals(threshold + " values between 0 and 255", 0, Core.countNonZero(between));
+            long white = Core.countNonZero(result);
+            assertTrue(threshold + " has paper and ink", white > 0 && white < result.total());
+
+            between.release();
+            result.release();
+        }
+    }
+
+    private static Mat binarize(Binarization binarization) {
+        DocumentEnhancer enhancer = new DocumentEnhancer();
+        enhancer.setBinarization(binarization);
+        Mat result = sPage.clone();
+        enhancer.binarize(result);
+        enhancer.release();
+        return result;
+    }
+
+    /**
+     * F-measure of the ink pixels found in a binarized page, against the ink mask
+     */
+    private static double fMeasure(Mat binary) {
+        Mat found = new Mat();
+        Core.compare(binary, Scalar.all(128), found, Core.CMP_LT);
+        Mat hits = new Mat();
+        Core.bitwise_and(found, sInk, hits);
+
+        double truePositives = Core.countNonZero(hits);
+        double precision = truePositives / Core.countNonZero(found);
+        double recall = truePositives / Core.countNonZero(sInk);
+
+        found.release();
+        hits.release();
+        binary.release();
+        return 2 * precision * recall / (precision + recall);
+    }
+
+    /**
+     * Lines of letter like boxes and a few rules, 255 where the page has ink
+     */
+    private static Mat inkMask(Random random) {
+        Mat ink = new Mat(HEIGHT, WIDTH, CvType.CV_8UC1, Scalar.all(0));
+        int lineHeight = HEIGHT / 50;
+        int margin = WIDTH / 12;
+
+        for (int y = margin; y < HEIGHT - margin; y += lineHeight) {
+            if (random.nextInt(7) == 0) {
+                Imgproc.line(ink, new Point(margin, y), new Point(WIDTH - margin, y), Scalar.all(255), 1);
+                continue;
+            }
+            int x = margin;
+            int end = margin + random.nextInt(WIDTH - 2 * margin);
+            while (x < end) {
+                int letter = lineHeight / 3 + random.nextInt(lineHeight / 3);
+                Imgproc.rectangle(ink, new Point(x, y), new Point(x + letter / 2, y + letter), Scalar.all(255), 2);
+                x += letter / 2 + 6 + (random.nextInt(5) == 0 ? letter : 0);
+            }
+        }
+        return ink;
+    }
+
+    /**
+     * The page under light falling from its top left corner, slightly blurred and noisy
+     */
+    private static Mat print(Mat ink, Random random) {
+        Size size = ink.size();
+        Mat page = new Mat(size, CvType.CV_32FC1, new Scalar(220));
+        page.setTo(new Scalar(50), ink);
+
+        Mat light = new Mat(2, 2, CvType.CV_32FC1);
+        light.put(0, 0, 1.0, 0.6, 0.6, 0.35);
+        Mat lighting = new Mat();
+        Imgproc.resize(light, lighting, size, 0, 0, Imgproc.INTER_LINEAR);
+        Core.multiply(page, lighting, page);
+
+        Imgproc.GaussianBlur(page, page, new Size(0, 0), 1);
+
+        Mat noise = new Mat(size, CvType.CV_32FC1);
+        Core.setRNGSeed(random.nextInt());
+        Core.randn(noise, 0, 4);
+        Core.add(page, noise, page);
+
+        Mat picture = new Mat();
+        page.convertTo(picture, CvType.CV_8UC1);
+
+        page.release();
+        light.release();
+        lighting.release();
+        noise.release();
+        return picture;
+    }
+}
@@ -0,0 +1,170 @@
+package com.todobom.opennotescanner.processing;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * The integer kernel gives the same bytes as the original colour enhancement,
+ * which is kept here as the reference: the inverted mean adaptive threshold as
+ * the ink mask, then the colour threshold computed in doubles.
+ */
+public class ColorEnhanceKernelTest {
+
+    private static final int INK_OFFSET = BinarizeFilter.INK_OFFSET;
+    private static final int THRESHOLD = 110;
+
+    @BeforeClass
+    public static void loadOpenCV() {
+        nu.pattern.OpenCV.loadLocally();
+    }
+
+    @Test
+    public void everyInkColourMatchesTheReference() {
+        // one pixel per RGB value, all of them ink
+        int side = 4096;
+        byte[] pixels = new byte[side * side * 3];
+        for (int rgb = 0, i = 0; rgb < 1 << 24; rgb++, i += 3) {
+            pixels[i] = (byte) (rgb >> 16);
+            pixels[i + 1] = (byte) (rgb >> 8);
+            pixels[i + 2] = (byte) rgb;
+        }
+        byte[] gray = new byte[side * side];
+        byte[] mean = new byte[side * side];
+        Arrays.fill(mean, (byte) 255);
+
+        assertKernelMatchesReference(pixels, 3, gray, mean, side, side);
+    }
+
+    @Test
+    public void colourTestBoundaryMatchesTheReference() {
+        // around mean == max * 0.8 for every max, the brightest channel moved
+        // off the first one so that it is not skipped as absolute white
+        int count = 0;
+        byte[] pixels = new byte[256 * 3 * 2 * 3];
+        for (int max = 1; max < 256; max++) {
+            int boundary = max * 12 / 5;
+            for (int sum = boundary - 1; sum <= boundary + 1; sum++) {
+                int rest = sum - max;
+                if (rest < 0 || rest > 2 * max) {
+                    continue;
+                }
+                int c0 = Math.min(rest, max);
+                int c2 = rest - c0;
+                for (int[] pixel : new int[][]{{c0, max, c2}, {c2, c0, max}}) {
+                    pixels[count * 3] = (byte) pixel[0];
+                    pixels[count * 3 + 1] = (byte) pixel[1];
+                    pixels[count * 3 + 2] = (byte) pixel[2];
+                    count++;
+                }
+            }
+        }
+        byte[] gray = new byte[count];
+        byte[] mean = new byte[count];
+        Arrays.fill(mean, (byte) 255);
+
+        assertKernelMatchesReference(Arrays.copyOf(pixels, count * 3), 3, gray, mean, count, 1);
+    }
+
+    @Test
+    public void inkMaskMatchesTheReference() {
+        int width = 640;
+        int height = 480;
+        Random random = new Random(7);
+        byte[] pixels = randomBytes(random, width * height * 3);
+        byte[] gray = randomBytes(random, width * height);
+        byte[] mean = new byte[width * height];
+        for (int i = 0; i < mean.length; i++) {
+            // gray just above, at and just below the ink offset under the mean
+            int value = (gray[i] & 0xff) + INK_OFFSET + random.nextInt(3) - 1;
+            mean[i] = (byte) Math.min(value, 255);
+        }
+
+        assertKernelMatchesReference(pixels, 3, gray, mean, width, height);
+    }
+
+    @Test
+    public void alphaIsLeftUntouched() {
+        int width = 640;
+        int height = 480;
+        Random random = new Random(11);
+        byte[] pixels = randomBytes(random, width * height * 4);
+        byte[] gray = randomBytes(random, width * height);
+        byte[] mean = randomBytes(random, width * height);
+
+        assertKernelMatchesReference(pixels, 4, gray, mean, width, height);
+    }
+
+    private static void assertKernelMatchesReference(byte[] pixels, int channels, byte[] gray, byte[] mean,
+                                                     int width, int height) {
+        byte[] expected = pixels.clone();
+        colorThresh(expected, channels, gray, mean);
+
+        Mat src = new Mat(height, width, CvType.makeType(CvType.CV_8U, channels));
+        src.put(0, 0, pixels);
+        Mat grayMat = new Mat(height, width, CvType.CV_8UC1);
+        grayMat.put(0, 0, gray);
+        Mat meanMat = new Mat(height, width, CvType.CV_8UC1);
+        meanMat.put(0, 0, mean);
+
+        ColorEnhanceKernel.apply(src, grayMat, meanMat, INK_OFFSET, THRESHOLD);
+
+        byte[] actual = new byte[pixels.length];
+        src.get(0, 0, actual);
+        assertArrayEquals(channels + " channels", expected, actual);
+        if (channels == 4) {
+            for (int i = 3; i < pixels.length; i += 4) {
+                assertEquals("alpha of pixel " + i / 4, pixels[i], actual[i]);
+            }
+        }
+
+        src.release();
+        grayMat.release();
+        meanMat.release();
+    }
+
+    /**
+     * The original enhancement: pixels outside the ink mask of the adaptive
+     * threshold turn white, then the colour threshold runs on the doubles
+     */
+    private static void colorThresh(byte[] d, int channels, byte[] gray, byte[] mean) {
+        for (int x = 0, i = 0; x < gray.length; x++, i += channels) {
+
+            // THRESH_BINARY_INV keeps the pixels at least the offset below the mean
+            if ((gray[x] & 0xff) > (mean[x] & 0xff) - INK_OFFSET) {
+                d[i] = d[i + 1] = d[i + 2] = (byte) 255;
+                continue;
+            }
+
+            if ((double) (d[i] & 0xff) == 255) {
+                continue;
+            }
+
+            double max = Math.max(Math.max((double) (d[i] & 0xff), (double) (d[i + 1] & 0xff)),
+                    (double) (d[i + 2] & 0xff));
+            double average = ((double) (d[i] & 0xff) + (double) (d[i + 1] & 0xff)
+                    + (double) (d[i + 2] & 0xff)) / 3;
+
+            if (max > THRESHOLD && average < max * 0.8) {
+                d[i] = (byte) ((double) (d[i] & 0xff) * 255 / max);
+                d[i + 1] = (byte) ((double) (d[i + 1] & 0xff) * 255 / max);
+                d[i + 2] = (byte) ((double) (d[i + 2] & 0xff) * 255 / max);
+            } else {
+                d[i] = d[i + 1] = d[i + 2] = 0;
+            }
+        }
+    }
+
+    private static byte[] randomBytes(Random random, int length) {
+        byte[] bytes = new byte[length];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+}
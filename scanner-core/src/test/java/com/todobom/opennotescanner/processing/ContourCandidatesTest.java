@@ -0,0 +1,73 @@
+package com.todobom.opennotescanner.processing;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.Point;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class ContourCandidatesTest {
+
+    @BeforeClass
+    public static void loadOpenCV() {
+        nu.pattern.OpenCV.loadLocally();
+    }
+
+    private static MatOfPoint square(int side) {
+        return new MatOfPoint(new Point(0, 0), new Point(side, 0), new Point(side, side), new Point(0, side));
+    }
+
+    private static List<MatOfPoint> squares(int... sides) {
+        List<MatOfPoint> contours = new ArrayList<>();
+        for (int side : sides) {
+            contours.add(square(side));
+        }
+        return contours;
+    }
+
+    @Test
+    public void candidatesAreSortedByDescendingArea() {
+        ContourCandidates candidates = new ContourCandidates();
+
+        assertEquals(4, candidates.select(squares(20, 50, 10, 30), 0));
+
+        int[] expected = {1, 3, 0, 2};
+        for (int n = 0; n < expected.length; n++) {
+            assertEquals(expected[n], candidates.getIndex(n));
+        }
+        assertEquals(2500, candidates.getArea(0), 1e-9);
+        assertEquals(100, candidates.getArea(3), 1e-9);
+    }
+
+    @Test
+    public void smallContoursAreDropped() {
+        ContourCandidates candidates = new ContourCandidates();
+
+        assertEquals(2, candidates.select(squares(20, 50, 10, 30), 500));
+        assertEquals(1, candidates.getIndex(0));
+        assertEquals(3, candidates.getIndex(1));
+    }
+
+    @Test
+    public void onlyTheBiggestAreKept() {
+        ContourCandidates candidates = new ContourCandidates(3);
+
+        assertEquals(3, candidates.select(squares(10, 60, 20, 50, 30, 40), 0));
+        assertEquals(1, candidates.getIndex(0));
+        assertEquals(3, candidates.getIndex(1));
+        assertEquals(5, candidates.getIndex(2));
+    }
+
+    @Test
+    public void selectionStartsOverOnEveryCall() {
+        ContourCandidates candidates = new ContourCandidates();
+
+        candidates.select(squares(20, 50, 10), 0);
+        assertEquals(0, candidates.select(squares(5), 100));
+        assertEquals(0, candidates.size());
+    }
+}
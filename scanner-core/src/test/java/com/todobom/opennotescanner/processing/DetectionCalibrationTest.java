@@ -0,0 +1,131 @@
+package com.todobom.opennotescanner.processing;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Feeds the calibration with made up detection times instead of timing the detection
+ */
+public class DetectionCalibrationTest {
+
+    private static final long FAST = millis(10);
+    private static final long SLOW = millis(45);
+    private static final long BUDGET = millis(DetectionCalibration.DEFAULT_FRAME_BUDGET_MILLIS);
+
+    @Test
+    public void sweepsTheHeightsWhileTheyFit() {
+        DetectionCalibration calibration = new DetectionCalibration(1080);
+        warmUp(calibration);
+
+        int[] heights = DetectionCalibration.DEFAULT_HEIGHTS;
+        for (int i = 0; i < heights.length; i++) {
+            assertEquals(heights[i], calibration.getHeight());
+            assertFalse(calibration.isDone());
+            boolean done = sample(calibration, 10, FAST);
+            assertEquals("done after " + heights[i], i == heights.length - 1, done);
+        }
+        assertTrue(calibration.isDone());
+        assertEquals(720, calibration.getChosenHeight());
+        assertEquals(720, calibration.getHeight());
+    }
+
+    @Test
+    public void stopsAtTheLastHeightWithinTheBudget() {
+        DetectionCalibration calibration = new DetectionCalibration(1080);
+        warmUp(calibration);
+
+        // the 75th percentile of ten samples is the eighth, two slow ones still fit
+        sample(calibration, 8, BUDGET);
+        assertFalse(sample(calibration, 2, SLOW));
+        assertEquals(300, calibration.getHeight());
+
+        // three do not
+        sample(calibration, 7, FAST);
+        assertTrue(sample(calibration, 3, SLOW));
+        assertTrue(calibration.isDone());
+        assertEquals(240, calibration.getChosenHeight());
+        assertEquals(240, calibration.getHeight());
+    }
+
+    @Test
+    public void smallestHeightIsKeptWhenNothingFits() {
+        DetectionCalibration calibration = new DetectionCalibration(1080);
+        warmUp(calibration);
+
+        assertTrue(sample(calibration, 10, SLOW));
+        assertEquals(240, calibration.getChosenHeight());
+    }
+
+    @Test
+    public void heightsAreCappedAtTheFrameHeight() {
+        DetectionCalibration calibration = new DetectionCalibration(480);
+        warmUp(calibration);
+
+        for (int height : new int[]{240, 300, 360, 420}) {
+            assertEquals(height, calibration.getHeight());
+            sample(calibration, 10, FAST);
+        }
+        assertTrue(calibration.isDone());
+        assertEquals(420, calibration.getChosenHeight());
+
+        // a frame below every candidate is detected at its own height
+        DetectionCalibration small = new DetectionCalibration(200);
+        assertEquals(200, small.getHeight());
+        warmUp(small);
+        assertTrue(sample(small, 10, FAST));
+        assertEquals(200, small.getChosenHeight());
+    }
+
+    @Test
+    public void samplesOfAnotherHeightAreIgnored() {
+        DetectionCalibration calibration = new DetectionCalibration(1080);
+        warmUp(calibration);
+
+        sample(calibration, 9, FAST);
+        for (int i = 0; i < 20; i++) {
+            assertFalse(calibration.record(300, SLOW));
+        }
+        sample(calibration, 1, FAST);
+        assertEquals(300, calibration.getHeight());
+    }
+
+    @Test
+    public void heightsOfAnotherVersionAreIgnored() {
+        assertEquals(500, DetectionCalibration.getStoredHeight(500, DetectionCalibration.VERSION));
+        assertEquals(0, DetectionCalibration.getStoredHeight(500, DetectionCalibration.VERSION - 1));
+        assertEquals(0, DetectionCalibration.getStoredHeight(500, DetectionCalibration.VERSION + 1));
+        // nothing stored
+        assertEquals(0, DetectionCalibration.getStoredHeight(0, 0));
+    }
+
+    /**
+     * The first detections are not timed, however slow they are
+     */
+    private static void warmUp(DetectionCalibration calibration) {
+        int height = calibration.getHeight();
+        for (int i = 0; i < 5; i++) {
+            assertFalse(calibration.record(height, millis(1000)));
+        }
+    }
+
+    /**
+     * Records count samples at the current height
+     *
+     * @return true when the last one ended the calibration
+     */
+    private static boolean sample(DetectionCalibration calibration, int count, long nanos) {
+        int height = calibration.getHeight();
+        boolean done = false;
+        for (int i = 0; i < count; i++) {
+            done = calibration.record(height, nanos);
+        }
+        return done;
+    }
+
+    private static long millis(double millis) {
+        return (long) (millis * 1_000_000);
+    }
+}
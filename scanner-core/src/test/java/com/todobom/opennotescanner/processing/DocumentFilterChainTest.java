@@ -0,0 +1,110 @@
+package com.todobom.opennotescanner.processing;
+
+import com.todobom.opennotescanner.processing.DocumentEnhancer.Binarization;
+import com.todobom.opennotescanner.processing.DocumentFilter.Format;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Scalar;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class DocumentFilterChainTest {
+
+    private static DocumentFilter.Context sContext;
+
+    @BeforeClass
+    public static void loadOpenCV() {
+        nu.pattern.OpenCV.loadLocally();
+        sContext = new DocumentFilter.Context(new TileExecutor(2), new ScratchPool());
+    }
+
+    @Test
+    public void contrastFiltersAreFused() {
+        DocumentFilterChain chain = DocumentFilterChain.of(sContext,
+                new ContrastFilter(2, 10), new ContrastFilter(0.5, 5));
+
+        List<DocumentFilter> filters = chain.getFilters();
+        assertEquals(1, filters.size());
+        ContrastFilter fused = (ContrastFilter) filters.get(0);
+        assertEquals(1, fused.getGain(), 1e-9);
+        assertEquals(10, fused.getBias(), 1e-9);
+    }
+
+    @Test
+    public void contrastIsFusedIntoTheColorBoost() {
+        DocumentFilterChain chain = DocumentFilterChain.of(sContext,
+                new ContrastFilter(1.2, 0), new ColorBoostFilter(Binarization.ADAPTIVE_MEAN));
+
+        assertEquals(1, chain.getFilters().size());
+        assertTrue(chain.getFilters().get(0) instanceof ColorBoostFilter);
+    }
+
+    @Test
+    public void filtersThatCanNotMergeAreKept() {
+        DocumentFilterChain chain = DocumentFilterChain.of(sContext,
+                new GrayscaleFilter(), new BinarizeFilter(Binarization.ADAPTIVE_MEAN), new DespeckleFilter());
+
+        assertEquals(3, chain.getFilters().size());
+    }
+
+    @Test
+    public void grayscaleChainsProduceGray() {
+        DocumentFilterChain chain = DocumentFilterChain.of(sContext,
+                new GrayscaleFilter(), new BinarizeFilter(Binarization.ADAPTIVE_MEAN));
+
+        assertEquals(Format.GRAY, chain.getOutputFormat(Format.COLOR));
+        assertEquals(Format.GRAY, chain.getOutputFormat(Format.GRAY));
+        assertFalse(chain.isColorNeeded());
+    }
+
+    @Test
+    public void colorFiltersRejectGray() {
+        DocumentFilterChain chain = DocumentFilterChain.of(sContext,
+                new GrayscaleFilter(), new ColorBoostFilter(Binarization.ADAPTIVE_MEAN));
+
+        try {
+            chain.getOutputFormat(Format.COLOR);
+            fail("the colour boost took the output of the grayscale filter");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void grayImagesAreRejectedBeforeFiltering() {
+        DocumentFilterChain chain = DocumentFilterChain.of(sContext,
+                new ColorBoostFilter(Binarization.ADAPTIVE_MEAN));
+        Mat gray = new Mat(64, 64, CvType.CV_8UC1, new Scalar(200));
+
+        try {
+            chain.apply(gray);
+            fail("the colour boost took a gray image");
+        } catch (IllegalArgumentException e) {
+            assertEquals(CvType.CV_8UC1, gray.type());
+        } finally {
+            gray.release();
+        }
+    }
+
+    @Test
+    public void grayscaleChainTurnsColorDocumentsGray() {
+        DocumentFilterChain chain = DocumentFilterChain.of(sContext,
+                new GrayscaleFilter(), new BinarizeFilter(Binarization.ADAPTIVE_MEAN));
+        Mat document = new Mat(300, 200, CvType.CV_8UC3, new Scalar(220, 210, 200));
+
+        chain.apply(document);
+
+        assertEquals(CvType.CV_8UC1, document.type());
+        assertEquals(300, document.rows());
+        assertEquals(200, document.cols());
+        document.release();
+    }
+}
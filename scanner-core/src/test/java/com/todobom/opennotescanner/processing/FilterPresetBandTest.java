@@ -0,0 +1,99 @@
+package com.todobom.opennotescanner.processing;
+
+import com.todobom.opennotescanner.processing.DocumentEnhancer.Binarization;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.core.Scalar;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Every preset gives the same document whatever the number of bands it runs in
+ */
+public class FilterPresetBandTest {
+
+    private static final int WIDTH = 1400;
+    private static final int HEIGHT = 1800;
+
+    @BeforeClass
+    public static void loadOpenCV() {
+        nu.pattern.OpenCV.loadLocally();
+    }
+
+    @Test
+    public void presetsDoNotDependOnTheBandCount() {
+        Mat page = drawPage();
+        TileExecutor single = new TileExecutor(1);
+        TileExecutor banded = new TileExecutor(8);
+
+        for (Binarization binarization : Binarization.values()) {
+            for (FilterPreset preset : FilterPreset.values()) {
+                String name = preset + " " + binarization;
+                DocumentFilterChain chain = enhancer(banded, preset, binarization).getChain();
+                for (DocumentFilter filter : chain.getFilters()) {
+                    if (filter.getRadius() != DocumentFilter.WHOLE_PAGE) {
+                        // otherwise the comparison would run both in a single band
+                        assertTrue(name + " runs in bands", banded.getBandCount(HEIGHT, filter.getRadius()) > 1);
+                    }
+                }
+
+                Mat expected = page.clone();
+                enhancer(single, preset, binarization).enhance(expected);
+                Mat actual = page.clone();
+                enhancer(banded, preset, binarization).enhance(actual);
+
+                assertEquals(name + " type", expected.type(), actual.type());
+                Mat diff = new Mat();
+                Core.absdiff(expected, actual, diff);
+                assertEquals(name + " differing values", 0, Core.countNonZero(diff.reshape(1)));
+
+                diff.release();
+                expected.release();
+                actual.release();
+            }
+        }
+        page.release();
+    }
+
+    private static DocumentEnhancer enhancer(TileExecutor tiles, FilterPreset preset, Binarization binarization) {
+        DocumentEnhancer enhancer = new DocumentEnhancer(tiles);
+        enhancer.setPreset(preset);
+        enhancer.setBinarization(binarization);
+        return enhancer;
+    }
+
+    /**
+     * Coloured strokes on a noisy page lit from one side
+     */
+    private static Mat drawPage() {
+        Random random = new Random(42);
+        byte[] pixels = new byte[WIDTH * HEIGHT * 3];
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                int light = 150 + 90 * x / WIDTH;
+                for (int c = 0; c < 3; c++) {
+                    int value = light - 10 * c + random.nextInt(9) - 4;
+                    pixels[(y * WIDTH + x) * 3 + c] = (byte) Math.max(0, Math.min(255, value));
+                }
+            }
+        }
+        Mat page = new Mat(HEIGHT, WIDTH, CvType.CV_8UC3);
+        page.put(0, 0, pixels);
+
+        for (int i = 0; i < 400; i++) {
+            Point origin = new Point(random.nextInt(WIDTH - 60), 15 + random.nextInt(HEIGHT - 20));
+            Scalar ink = new Scalar(random.nextInt(80), random.nextInt(80), 40 + random.nextInt(120));
+            Imgproc.putText(page, "ink", origin, Imgproc.FONT_HERSHEY_SIMPLEX, 0.6, ink, 2);
+        }
+        return page;
+    }
+}
@@ -0,0 +1,80 @@
+package com.todobom.opennotescanner.processing;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class FrameMailboxTest {
+
+    @Test
+    public void latestFrameWins() {
+        FrameMailbox<String> mailbox = new FrameMailbox<>();
+        String first = "first";
+        String second = "second";
+
+        assertNull(mailbox.post(first));
+        assertSame(first, mailbox.post(second));
+        assertSame(second, mailbox.take());
+        assertNull(mailbox.take());
+
+        assertEquals(2, mailbox.getPostedCount());
+        assertEquals(1, mailbox.getDroppedCount());
+    }
+
+    @Test
+    public void clearDropsTheWaitingFrame() {
+        FrameMailbox<String> mailbox = new FrameMailbox<>();
+        String frame = "frame";
+
+        assertNull(mailbox.clear());
+        mailbox.post(frame);
+        assertSame(frame, mailbox.clear());
+        assertNull(mailbox.take());
+
+        assertEquals(1, mailbox.getPostedCount());
+        assertEquals(1, mailbox.getDroppedCount());
+    }
+
+    @Test
+    public void everyFrameIsTakenOrHandedBackOnce() throws InterruptedException {
+        int frames = 100_000;
+        FrameMailbox<Integer> mailbox = new FrameMailbox<>();
+        AtomicIntegerArray seen = new AtomicIntegerArray(frames);
+        CountDownLatch posted = new CountDownLatch(1);
+
+        Thread consumer = new Thread(() -> {
+            while (true) {
+                Integer frame = mailbox.take();
+                if (frame != null) {
+                    seen.incrementAndGet(frame);
+                } else if (posted.getCount() == 0) {
+                    Integer last = mailbox.take();
+                    if (last != null) {
+                        seen.incrementAndGet(last);
+                    }
+                    return;
+                }
+            }
+        });
+        consumer.start();
+
+        for (int i = 0; i < frames; i++) {
+            Integer stale = mailbox.post(i);
+            if (stale != null) {
+                seen.incrementAndGet(stale);
+            }
+        }
+        posted.countDown();
+        consumer.join();
+
+        for (int i = 0; i < frames; i++) {
+            assertEquals("frame " + i, 1, seen.get(i));
+        }
+        assertEquals(frames, mailbox.getPostedCount());
+    }
+}
@@ -0,0 +1,69 @@
+package com.todobom.opennotescanner.processing;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Preview sizes picked on size lists like the ones cameras report
+ */
+public class PreviewSizePolicyTest {
+
+    private static final int[][] SIZES_16_9 = {
+            {1920, 1080}, {1280, 720}, {960, 540}, {640, 360}, {1440, 1080}, {640, 480}
+    };
+
+    private static final int[][] SIZES_4_3 = {
+            {1600, 1200}, {1440, 1080}, {960, 720}, {800, 600}, {640, 480}, {1920, 1080}
+    };
+
+    @Test
+    public void qrCodeNeedsMoreThanTheDefaultDetectionHeight() {
+        // 2 px * 21 modules * 148 mm / 11.3 mm / 0.9 = 611.2
+        assertEquals(612, PreviewSizePolicy.getQRCodeHeight());
+        assertEquals(612, PreviewSizePolicy.getRequiredHeight(DetectionGeometry.DEFAULT_DETECTION_HEIGHT));
+        assertEquals(720, PreviewSizePolicy.getRequiredHeight(720));
+    }
+
+    @Test
+    public void smallest16By9PreviewTallEnoughIsChosen() {
+        int index = PreviewSizePolicy.choose(SIZES_16_9, 16.0 / 9, PreviewSizePolicy.getRequiredHeight(500));
+        assertSize(1280, 720, SIZES_16_9, index);
+    }
+
+    @Test
+    public void smallest4By3PreviewTallEnoughIsChosen() {
+        int index = PreviewSizePolicy.choose(SIZES_4_3, 4.0 / 3, PreviewSizePolicy.getRequiredHeight(500));
+        assertSize(960, 720, SIZES_4_3, index);
+    }
+
+    @Test
+    public void pictureAspectIsMatchedWithinTolerance() {
+        // 4000x2250 pictures are 16:9, 1280x720 too
+        int index = PreviewSizePolicy.choose(SIZES_16_9, 4000.0 / 2250, 611);
+        assertSize(1280, 720, SIZES_16_9, index);
+        // 1088 high previews are still 16:9
+        int[][] sizes = {{1920, 1088}, {1280, 720}};
+        assertSize(1920, 1088, sizes, PreviewSizePolicy.choose(sizes, 16.0 / 9, 1000));
+    }
+
+    @Test
+    public void largestPreviewOfTheAspectIsChosenWhenNoneIsTallEnough() {
+        int index = PreviewSizePolicy.choose(SIZES_16_9, 16.0 / 9, 1440);
+        assertSize(1920, 1080, SIZES_16_9, index);
+    }
+
+    @Test
+    public void noPreviewIsChosenWithoutThePictureAspect() {
+        // the caller falls back to the widest preview
+        int[][] sizes = {{1920, 1080}, {1280, 720}, {640, 360}};
+        assertTrue(PreviewSizePolicy.choose(sizes, 4.0 / 3, 611) < 0);
+        assertTrue(PreviewSizePolicy.choose(new int[0][], 4.0 / 3, 611) < 0);
+    }
+
+    private static void assertSize(int width, int height, int[][] sizes, int index) {
+        assertTrue("a size is chosen", index >= 0);
+        assertEquals(width + "x" + height, sizes[index][0] + "x" + sizes[index][1]);
+    }
+}
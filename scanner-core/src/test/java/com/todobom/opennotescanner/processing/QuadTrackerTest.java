@@ -0,0 +1,136 @@
+package com.todobom.opennotescanner.processing;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.Point;
+import org.opencv.core.Scalar;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tracks a synthetic quad drawn on two frames, the second one breaking one of
+ * the conditions tracking gives up on
+ */
+public class QuadTrackerTest {
+
+    private static final int WIDTH = 400;
+    private static final int HEIGHT = 300;
+
+    private static final Point[] QUAD = {
+            new Point(100, 80), new Point(260, 90), new Point(250, 210), new Point(110, 200)
+    };
+
+    @BeforeClass
+    public static void loadOpenCV() {
+        nu.pattern.OpenCV.loadLocally();
+    }
+
+    @Test
+    public void followsATranslatedQuad() {
+        QuadTracker tracker = new QuadTracker();
+        tracker.start(draw(QUAD), QUAD);
+
+        Point[] moved = translate(QUAD, 6, 4);
+        Point[] tracked = tracker.track(draw(moved));
+
+        assertNotNull("tracked", tracked);
+        for (int i = 0; i < 4; i++) {
+            assertEquals("x of corner " + i, moved[i].x, tracked[i].x, 1);
+            assertEquals("y of corner " + i, moved[i].y, tracked[i].y, 1);
+        }
+        assertTrue(tracker.isTracking());
+        assertEquals(1, tracker.getTrackedCount());
+    }
+
+    @Test
+    public void lostCornerResets() {
+        // the first corner moves out of the frame, optical flow loses it
+        Point[] start = translate(QUAD, -92, -73);
+        assertLost(start, draw(translate(start, -12, -10)));
+    }
+
+    @Test
+    public void cornerJumpResets() {
+        // more than a tenth of the frame height
+        assertLost(draw(translate(QUAD, 0, 0.1 * HEIGHT + 8)));
+    }
+
+    @Test
+    public void areaChangeResets() {
+        Point[] grown = new Point[4];
+        for (int i = 0; i < 4; i++) {
+            // the corners stay close, the area grows by more than a quarter
+            grown[i] = new Point(180 + (QUAD[i].x - 180) * 1.2, 145 + (QUAD[i].y - 145) * 1.2);
+        }
+        assertLost(draw(grown));
+    }
+
+    @Test
+    public void nonConvexQuadResets() {
+        // corners handed over in crossing order are followed, but the quad they
+        // form folds over itself
+        QuadTracker tracker = new QuadTracker();
+        tracker.start(draw(QUAD), new Point[]{QUAD[0], QUAD[2], QUAD[1], QUAD[3]});
+
+        assertNull(tracker.track(draw(translate(QUAD, 6, 4))));
+        assertFalse(tracker.isTracking());
+        assertEquals(1, tracker.getLostCount());
+    }
+
+    @Test
+    public void fullDetectionIsForcedAfterTheTrackedFrameLimit() {
+        QuadTracker tracker = new QuadTracker();
+        Mat frame = draw(QUAD);
+        tracker.start(frame, QUAD);
+
+        for (int i = 0; i < QuadTracker.MAX_TRACKED_FRAMES; i++) {
+            assertNotNull("frame " + i, tracker.track(frame));
+        }
+        assertNull(tracker.track(frame));
+        assertFalse(tracker.isTracking());
+
+        // a new start begins a new run
+        tracker.start(frame, QUAD);
+        assertNotNull(tracker.track(frame));
+    }
+
+    private static void assertLost(Mat frame) {
+        assertLost(QUAD, frame);
+    }
+
+    /**
+     * Starts tracking start on a frame showing it, the next frame must lose it
+     */
+    private static void assertLost(Point[] start, Mat frame) {
+        QuadTracker tracker = new QuadTracker();
+        tracker.start(draw(start), start);
+
+        assertNull(tracker.track(frame));
+        assertFalse(tracker.isTracking());
+        assertEquals(1, tracker.getLostCount());
+    }
+
+    private static Mat draw(Point[] corners) {
+        Mat frame = new Mat(HEIGHT, WIDTH, CvType.CV_8UC1, new Scalar(60));
+        Imgproc.fillPoly(frame, Collections.singletonList(new MatOfPoint(corners)), new Scalar(220));
+        return frame;
+    }
+
+    private static Point[] translate(Point[] corners, double dx, double dy) {
+        Point[] moved = new Point[corners.length];
+        for (int i = 0; i < corners.length; i++) {
+            moved[i] = new Point(corners[i].x + dx, corners[i].y + dy);
+        }
+        return moved;
+    }
+}
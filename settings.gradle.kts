@@ -1,3 +1,10 @@
+pluginManagement {
+    repositories {
+        gradlePluginPortal()
+        mavenCentral()
+        google()
+    }
+}
 dependencyResolutionManagement {
     repositoriesMode.set(RepositoriesMode.FAIL_ON_PROJECT_REPOS)
     repositories {
@@ -8,3 +15,5 @@ dependencyResolutionManagement {
 }
 rootProject.name = "Open Note Scanner"
 include(":app")
+include(":scanner-core")
+include(":scanner-cli")